@@ -1,18 +1,27 @@
 package com.hmdp.config;
 
+import com.hmdp.interceptor.AdminInterceptor;
 import com.hmdp.interceptor.LoginInterceptor;
 import com.hmdp.interceptor.RefreshTokenInterceptor;
+import com.hmdp.utils.LoginSessions;
+import com.hmdp.utils.StatelessTokens;
 import jakarta.annotation.Resource;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.util.Set;
+
 @Configuration
 public class MvcConfig implements WebMvcConfigurer {
 
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private LoginSessions loginSessions;
+    @Resource
+    private StatelessTokens statelessTokens;
+    @Value("${hmdp.admin.user-ids:}")
+    private Set<Long> adminUserIds;//可以调用运维接口的用户ID
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
@@ -23,10 +32,16 @@ public class MvcConfig implements WebMvcConfigurer {
                 "/shop-type/**",
                 "/upload/**",
                 "/blog/hot",
+                "/blog/hot/scroll",
                 "/user/code",
-                "/user/login").order(1);
+                "/user/login",
+                "/user/token/refresh").order(1);
+        // 运维接口拦截器：重建布隆过滤器、手动触发缓存预热会全表扫描并重写Redis，只允许管理员调用
+        registry.addInterceptor(new AdminInterceptor(adminUserIds)).addPathPatterns(
+                "/bloom/rebuild/**",
+                "/warmup").order(2);
         // 刷新令牌拦截器
-        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).
+        registry.addInterceptor(new RefreshTokenInterceptor(loginSessions, statelessTokens)).
                 addPathPatterns("/**").
                 excludePathPatterns(
                         "/shop/**",
@@ -34,8 +49,10 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/shop-type/**",
                         "/upload/**",
                         "/blog/hot",
+                        "/blog/hot/scroll",
                         "/user/code",
                         "/user/login",
+                        "/user/token/refresh",
                         "/",
                         "/error",
                         "/static/**",
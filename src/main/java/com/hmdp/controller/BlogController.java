@@ -8,6 +8,8 @@ import com.hmdp.entity.Blog;
 import com.hmdp.entity.User;
 import com.hmdp.service.IBlogService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.BlogFeed;
+import com.hmdp.utils.BlogLikeFlusher;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
 import org.springframework.web.bind.annotation.*;
@@ -30,6 +32,10 @@ public class BlogController {
 
     @Resource
     private IBlogService blogService;
+    @Resource
+    private BlogLikeFlusher blogLikeFlusher;
+    @Resource
+    private BlogFeed blogFeed;
 
     /**
      * 发布用户博客/探店笔记
@@ -55,6 +61,26 @@ public class BlogController {
         return blogService.likeBlog(id);
     }
 
+    /**
+     * 查询点赞数写回数据库的统计，包含写回次数、写回延迟和当前积压
+     *
+     * @return 写回统计
+     */
+    @GetMapping("/like/flush/stats")
+    public Result queryLikeFlushStats() {
+        return Result.ok(blogLikeFlusher.stats());
+    }
+
+    /**
+     * 查询关注流推送统计，包含推送和只供拉取的笔记数量、写入的收件箱数量和大V数量
+     *
+     * @return 推送统计
+     */
+    @GetMapping("/feed/stats")
+    public Result queryFeedStats() {
+        return Result.ok(blogFeed.stats());
+    }
+
     /**
      * 查询当前登录用户的所有博客
      * 该接口用于查询当前登录用户发布的所有博客内容
@@ -67,6 +93,17 @@ public class BlogController {
         return blogService.queryMyBlog(current);
     }
 
+    /**
+     * 游标分页查询当前登录用户的博客，按id降序
+     *
+     * @param lastId 上一页最后一条的id，第一页不传
+     * @return 游标分页结果
+     */
+    @GetMapping("/of/me/scroll")
+    public Result queryMyBlogByCursor(@RequestParam(value = "lastId", required = false) Long lastId) {
+        return blogService.queryMyBlogByCursor(lastId);
+    }
+
     /**
      * 查询最热博客
      *
@@ -78,6 +115,20 @@ public class BlogController {
         return blogService.queryHotBlog(current);
     }
 
+    /**
+     * 游标分页查询最热博客
+     * 按点赞数、id降序，下一页时传入上一页返回的lastLiked和lastId，不使用OFFSET也不查询总数
+     *
+     * @param lastLiked 上一页最后一条的点赞数，第一页不传
+     * @param lastId    上一页最后一条的id，第一页不传
+     * @return 游标分页结果
+     */
+    @GetMapping("/hot/scroll")
+    public Result queryHotBlogByCursor(@RequestParam(value = "lastLiked", required = false) Integer lastLiked,
+                                       @RequestParam(value = "lastId", required = false) Long lastId) {
+        return blogService.queryHotBlogByCursor(lastLiked, lastId);
+    }
+
     /**
      * 查询博客详情
      *
@@ -114,6 +165,19 @@ public class BlogController {
         return blogService.queryBlogByUserId(current, id);
     }
 
+    /**
+     * 游标分页查询博主的探店笔记，按id降序
+     *
+     * @param id     用户ID，指定要查询的博主
+     * @param lastId 上一页最后一条的id，第一页不传
+     * @return 游标分页结果
+     */
+    @GetMapping("/of/user/scroll")
+    public Result queryBlogByUserIdByCursor(@RequestParam("id") Long id,
+                                            @RequestParam(value = "lastId", required = false) Long lastId) {
+        return blogService.queryBlogByUserIdByCursor(id, lastId);
+    }
+
     /**
      * 查询当前用户所关注的博主发布的最新笔记
      *
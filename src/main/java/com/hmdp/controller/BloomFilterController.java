@@ -0,0 +1,48 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.IdBloomFilters;
+import jakarta.annotation.Resource;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * <p>
+ *  布隆过滤器控制器 - 提供ID布隆过滤器的统计查询与全量重建
+ * </p>
+ */
+@RestController
+@RequestMapping("/bloom")
+public class BloomFilterController {
+
+    @Resource
+    private IdBloomFilters idBloomFilters;
+
+    /**
+     * 查询各过滤器的统计信息
+     * 包含位图大小、哈希函数个数、填充率、理论误判率，以及拦截次数和实际观测到的误判率
+     * @return 统计信息
+     */
+    @GetMapping("/stats")
+    public Result queryStats() {
+        return Result.ok(idBloomFilters.stats());
+    }
+
+    /**
+     * 从数据库全量重建指定过滤器，用于删除数据较多导致误判率升高的情况
+     * @param name 过滤器名：shop、voucher、blog
+     * @return 重建的ID数量
+     */
+    @PostMapping("/rebuild/{name}")
+    public Result rebuild(@PathVariable("name") String name) {
+        try {
+            return Result.ok(idBloomFilters.rebuild(name));
+        } catch (IllegalArgumentException e) {
+            return Result.fail(e.getMessage());
+        }
+    }
+}
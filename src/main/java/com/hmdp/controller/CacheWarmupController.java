@@ -0,0 +1,41 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.CacheWarmer;
+import jakarta.annotation.Resource;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * <p>
+ *  缓存预热控制器 - 提供手动触发缓存预热和查询预热进度
+ * </p>
+ */
+@RestController
+@RequestMapping("/warmup")
+public class CacheWarmupController {
+
+    @Resource
+    private CacheWarmer cacheWarmer;
+
+    /**
+     * 手动触发一次缓存预热，在后台执行，可通过进度接口查看结果
+     * @return 是否触发成功，未开启预热或已有预热在执行时失败
+     */
+    @PostMapping
+    public Result warmUp() {
+        return cacheWarmer.trigger() ? Result.ok() : Result.fail("预热未开启或正在执行");
+    }
+
+    /**
+     * 查询预热进度，包含当前阶段、各类数据的预热数量和耗时
+     * @return 预热进度
+     */
+    @GetMapping("/progress")
+    public Result queryProgress() {
+        return Result.ok(cacheWarmer.progress());
+    }
+}
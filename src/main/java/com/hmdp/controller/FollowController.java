@@ -3,14 +3,18 @@ package com.hmdp.controller;
 
 import com.hmdp.dto.Result;
 import com.hmdp.service.IFollowService;
+import com.hmdp.utils.FollowBitmapGraph;
 import jakarta.annotation.Resource;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+
 /**
  * <p>
  * 关注前端控制器 - 提供用户关注相关的REST API接口
@@ -26,6 +30,8 @@ public class FollowController {
 
     @Resource
     private IFollowService followService;
+    @Resource
+    private FollowBitmapGraph followBitmapGraph;
 
     /**
      * 关注
@@ -48,6 +54,16 @@ public class FollowController {
         return followService.isFollow(followUserId);
     }
 
+    /**
+     * 批量判断是否关注，用于用户列表
+     * @param followUserIds
+     * @return 用户ID -> 是否关注
+     */
+    @GetMapping("/or/not")
+    public Result isFollow(@RequestParam("ids") List<Long> followUserIds){
+        return followService.isFollow(followUserIds);
+    }
+
     /**
      * 共同关注
      * @param Id
@@ -57,4 +73,33 @@ public class FollowController {
     public Result followCommons(@PathVariable("id") Long Id){
         return followService.followCommons(Id);
     }
+
+    /**
+     * 关注数和粉丝数
+     * @param id
+     * @return
+     */
+    @GetMapping("/count/{id}")
+    public Result queryFollowCounts(@PathVariable("id") Long id){
+        return followService.queryFollowCounts(id);
+    }
+
+    /**
+     * 好友推荐：关注的人也关注了的用户
+     * @param limit
+     * @return
+     */
+    @GetMapping("/suggest")
+    public Result suggestFollows(@RequestParam(value = "limit", defaultValue = "10") Integer limit){
+        return followService.suggestFollows(limit);
+    }
+
+    /**
+     * 进程内关注关系图的内存占用
+     * @return
+     */
+    @GetMapping("/graph/stats")
+    public Result queryGraphStats(){
+        return Result.ok(followBitmapGraph.stats());
+    }
 }
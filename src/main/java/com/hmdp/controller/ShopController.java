@@ -67,17 +67,40 @@ public class ShopController {
     /**
      * 根据商铺类型分页查询商铺信息
      * 此接口用于按商铺类型筛选商铺，并支持分页展示，便于前端按分类浏览
+     * 传入坐标时从Redis GEO中按距离由近到远查询半径内的商铺
      *
      * @param typeId  商铺类型ID，用于筛选特定类型的商铺
      * @param current 当前页码，用于分页查询
+     * @param x       经度，可选
+     * @param y       纬度，可选
+     * @param radius  搜索半径（米），可选
      * @return 包含指定类型商铺列表的结果对象
      */
     @GetMapping("/of/type")
     public Result queryShopByType(
             @RequestParam("typeId") Integer typeId,
-            @RequestParam(value = "current", defaultValue = "1") Integer current
+            @RequestParam(value = "current", defaultValue = "1") Integer current,
+            @RequestParam(value = "x", required = false) Double x,
+            @RequestParam(value = "y", required = false) Double y,
+            @RequestParam(value = "radius", required = false) Double radius
     ) {
-        return shopService.queryShopByType(typeId, current);
+        return shopService.queryShopByType(typeId, current, x, y, radius);
+    }
+
+    /**
+     * 游标分页查询指定类型的商铺
+     * 按id升序，下一页时传入上一页返回的lastId，不使用OFFSET也不查询总数
+     *
+     * @param typeId 商铺类型ID
+     * @param lastId 上一页最后一条的id，第一页不传
+     * @return 游标分页结果
+     */
+    @GetMapping("/of/type/scroll")
+    public Result queryShopByTypeByCursor(
+            @RequestParam("typeId") Integer typeId,
+            @RequestParam(value = "lastId", required = false) Long lastId
+    ) {
+        return shopService.queryShopByTypeByCursor(typeId, lastId);
     }
 
     /**
@@ -95,4 +118,15 @@ public class ShopController {
     ) {
         return shopService.queryShopByName(name, current);
     }
+
+    /**
+     * 查询商铺缓存的命中统计
+     * 包含本地一级缓存和Redis二级缓存的命中次数与命中率
+     *
+     * @return 缓存统计信息
+     */
+    @GetMapping("/cache/stats")
+    public Result queryCacheStats() {
+        return shopService.queryCacheStats();
+    }
 }
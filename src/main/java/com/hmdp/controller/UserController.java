@@ -4,6 +4,8 @@ import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
 import com.hmdp.service.IUserInfoService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.LoginSessions;
+import com.hmdp.utils.StatelessTokens;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
@@ -30,6 +32,12 @@ public class UserController {
     @Resource
     private IUserInfoService userInfoService;
 
+    @Resource
+    private LoginSessions loginSessions;
+
+    @Resource
+    private StatelessTokens statelessTokens;
+
     /**
      * 发送手机验证码
      * @param phone
@@ -57,9 +65,37 @@ public class UserController {
      * @return 无
      */
     @PostMapping("/logout")
-    public Result logout(){
-        // TODO 实现登出功能
-        return Result.fail("功能未完成");
+    public Result logout(@RequestHeader("authorization") String token,
+                         @RequestParam(value = "refreshToken", required = false) String refreshToken){
+        return userService.logout(token, refreshToken);
+    }
+
+    /**
+     * 无状态模式下用刷新令牌换取新的访问令牌
+     * @param refreshToken 刷新令牌
+     * @return 新的访问令牌和刷新令牌
+     */
+    @PostMapping("/token/refresh")
+    public Result refreshToken(@RequestParam("refreshToken") String refreshToken){
+        return userService.refreshToken(refreshToken);
+    }
+
+    /**
+     * 查询无状态令牌校验统计
+     * @return 校验次数、吊销检查次数
+     */
+    @GetMapping("/token/stats")
+    public Result tokenStats(){
+        return Result.ok(statelessTokens.stats());
+    }
+
+    /**
+     * 查询会话缓存统计
+     * @return 本地会话缓存命中率、省去的Redis命令数
+     */
+    @GetMapping("/session/stats")
+    public Result sessionStats(){
+        return Result.ok(loginSessions.stats());
     }
 
     /**
@@ -4,6 +4,7 @@ package com.hmdp.controller;
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
 import jakarta.annotation.Resource;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -34,4 +35,14 @@ public class VoucherOrderController {
     public Result seckillVoucher(@PathVariable("id") Long voucherId) {
         return iVoucherOrderService.seckillVoucher(voucherId);
     }
+
+    /**
+     * 查询订单流水线统计
+     * 包含消费者数、已处理订单数、吞吐量、pending数量和消费延迟
+     * @return 统计信息
+     */
+    @GetMapping("pipeline/stats")
+    public Result queryOrderPipelineStats() {
+        return iVoucherOrderService.queryOrderPipelineStats();
+    }
 }
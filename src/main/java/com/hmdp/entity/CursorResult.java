@@ -0,0 +1,22 @@
+package com.hmdp.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+
+/**
+ * 游标分页结果，下一页请求时把lastId、lastLiked原样传回，不使用OFFSET也不查询总数
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorResult {
+
+    private List<?> list;// 数据
+    private Long lastId;//本页最后一条数据的id
+    private Integer lastLiked;//本页最后一条数据的点赞数，只有按点赞数排序时有值
+    private Boolean hasMore;//是否还有下一页
+}
@@ -79,6 +79,12 @@ public class Voucher implements Serializable {
     @TableField(exist = false)
     private Integer stock;
 
+    /**
+     * 秒杀库存分桶数，大于1时库存拆分到多个桶中，为空时使用默认配置
+     */
+    @TableField(exist = false)
+    private Integer stockBuckets;
+
     /**
      * 生效时间
      */
@@ -0,0 +1,37 @@
+package com.hmdp.interceptor;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.utils.UserHolder;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.util.Set;
+
+/**
+ * 运维接口拦截器 - 只允许配置的管理员用户调用全表扫描、重写Redis等运维接口
+ * 未配置管理员时运维接口全部拒绝
+ */
+public class AdminInterceptor implements HandlerInterceptor {
+
+    private final Set<Long> adminUserIds;
+
+    public AdminInterceptor(Set<Long> adminUserIds) {
+        this.adminUserIds = adminUserIds;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        UserDTO user = UserHolder.getUser();
+        if (user == null) {
+            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            return false;
+        }
+        //不是管理员，返回403
+        if (!adminUserIds.contains(user.getId())) {
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            return false;
+        }
+        return true;
+    }
+}
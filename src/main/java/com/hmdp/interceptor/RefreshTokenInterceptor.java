@@ -1,24 +1,21 @@
 package com.hmdp.interceptor;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.UserDTO;
-import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.LoginSessions;
+import com.hmdp.utils.StatelessTokens;
 import com.hmdp.utils.UserHolder;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.http.HttpStatus;
 import org.springframework.web.servlet.HandlerInterceptor;
 
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
-
 public class RefreshTokenInterceptor implements HandlerInterceptor {
 
-    private StringRedisTemplate stringRedisTemplate;
-    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate) {
-        this.stringRedisTemplate = stringRedisTemplate;
+    private LoginSessions loginSessions;
+    private StatelessTokens statelessTokens;
+    public RefreshTokenInterceptor(LoginSessions loginSessions, StatelessTokens statelessTokens) {
+        this.loginSessions = loginSessions;
+        this.statelessTokens = statelessTokens;
     }
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
@@ -29,22 +26,18 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
             response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
             return false;
         }
-        //2.基于token获取redis中的用户
-        String key= RedisConstants.LOGIN_USER_KEY + token;
-        Map<Object, Object> userMap = stringRedisTemplate.opsForHash().entries(key);
+        //2.基于token获取用户
+        //无状态令牌只校验签名、过期时间和吊销布隆过滤器；Redis会话优先读本地会话缓存，剩余有效期低于阈值时才刷新token的有效期
+        UserDTO userDTO = StatelessTokens.isStateless(token) ? statelessTokens.verify(token) : loginSessions.get(token);
         //3.判断用户是否存在
-        if (userMap.isEmpty()) {
+        if (userDTO == null) {
             //4.不存在，拦截，返回401状态码
             response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
             return false;
         }
-        // 5.将查询到的hash数据转为UserDTO对象
-        UserDTO userDTO = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
-        //6.存在，保存用户信息到ThreadLocal
+        //5.存在，保存用户信息到ThreadLocal
         UserHolder.saveUser(userDTO);
-        //7. 刷新token的有效期
-        stringRedisTemplate.expire(key, RedisConstants.LOGIN_USER_TTL, TimeUnit.MINUTES);
-        //8. 放行
+        //6. 放行
         return true;
     }
 }
@@ -2,6 +2,11 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.Blog;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 /**
  * <p>
@@ -14,4 +19,33 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface BlogMapper extends BaseMapper<Blog> {
 
+    /**
+     * 一条多行UPDATE批量累加点赞数，用于点赞数的异步写回
+     * @param deltas 博客ID -> 点赞数增量，不能为空
+     * @return 更新的行数
+     */
+    int incrLikedBatch(@Param("deltas") Map<Long, Long> deltas);
+
+    /**
+     * 查询某个写回批次中已经写回过的博客
+     * @param flushId 写回批次号
+     * @param blogIds 博客ID，不能为空
+     * @return 已写回的博客ID
+     */
+    List<Long> selectFlushedBlogIds(@Param("flushId") long flushId, @Param("blogIds") Collection<Long> blogIds);
+
+    /**
+     * 记录某个写回批次已写回的博客，与累加点赞数在同一个事务中执行
+     * @param flushId 写回批次号
+     * @param blogIds 博客ID，不能为空
+     * @return 插入的行数
+     */
+    int insertFlushed(@Param("flushId") long flushId, @Param("blogIds") Collection<Long> blogIds);
+
+    /**
+     * 删除已完成批次的写回记录
+     * @param flushId 写回批次号
+     * @return 删除的行数
+     */
+    int deleteFlushedUpTo(@Param("flushId") long flushId);
 }
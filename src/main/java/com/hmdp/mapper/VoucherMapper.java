@@ -18,4 +18,11 @@ import java.util.List;
 public interface VoucherMapper extends BaseMapper<Voucher> {
 
     List<Voucher> queryVoucherOfShop(@Param("shopId") Long shopId);
+
+    /**
+     * 批量查询多个店铺的优惠券，用于缓存预热，结果与queryVoucherOfShop逐个查询一致
+     * @param shopIds 店铺ID列表，不能为空
+     * @return 优惠券列表
+     */
+    List<Voucher> queryVoucherOfShops(@Param("shopIds") List<Long> shopIds);
 }
@@ -2,6 +2,9 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -14,4 +17,10 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface VoucherOrderMapper extends BaseMapper<VoucherOrder> {
 
+    /**
+     * 多行批量插入订单，一条INSERT ... VALUES (...),(...)写入整批订单
+     * @param orders 订单列表，不能为空
+     * @return 插入行数
+     */
+    int insertBatch(@Param("orders") List<VoucherOrder> orders);
 }
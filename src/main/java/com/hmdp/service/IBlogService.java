@@ -29,6 +29,14 @@ public interface IBlogService extends IService<Blog> {
      */
     Result queryHotBlog(Integer current);
 
+    /**
+     * 游标分页查询最热博客，按点赞数、id降序
+     * @param lastLiked 上一页最后一条的点赞数，第一页为空
+     * @param lastId 上一页最后一条的id，第一页为空
+     * @return CursorResult
+     */
+    Result queryHotBlogByCursor(Integer lastLiked, Long lastId);
+
     /**
      * 点赞博客
      */
@@ -55,6 +63,13 @@ public interface IBlogService extends IService<Blog> {
      */
     Result queryMyBlog(Integer current);
 
+    /**
+     * 游标分页查询当前登录用户的博客，按id降序
+     * @param lastId 上一页最后一条的id，第一页为空
+     * @return CursorResult
+     */
+    Result queryMyBlogByCursor(Long lastId);
+
     /**
      * 根据用户ID查询其发布的博客
      * @param current 当前页码
@@ -63,6 +78,14 @@ public interface IBlogService extends IService<Blog> {
      */
     Result queryBlogByUserId(Integer current, Long id);
 
+    /**
+     * 游标分页查询指定用户的博客，按id降序
+     * @param id 用户ID
+     * @param lastId 上一页最后一条的id，第一页为空
+     * @return CursorResult
+     */
+    Result queryBlogByUserIdByCursor(Long id, Long lastId);
+
     /**
      * 获取当前登录用户所关注的博主发布的最新博客
      * @param max
@@ -4,6 +4,8 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.Follow;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  * 关注服务接口 - 定义用户关注相关的业务操作方法
@@ -30,10 +32,31 @@ public interface IFollowService extends IService<Follow> {
      */
     Result isFollow(Long followUserId);
 
+    /**
+     * 批量判断是否关注
+     * @param followUserIds
+     * @return 用户ID -> 是否关注
+     */
+    Result isFollow(List<Long> followUserIds);
+
     /**
      * 共同关注
      * @param id
      * @return
      */
     Result followCommons(Long id);
+
+    /**
+     * 查询用户的关注数和粉丝数
+     * @param id
+     * @return
+     */
+    Result queryFollowCounts(Long id);
+
+    /**
+     * 好友推荐
+     * @param limit
+     * @return
+     */
+    Result suggestFollows(Integer limit);
 }
@@ -37,12 +37,23 @@ public interface IShopService extends IService<Shop> {
     Result saveShop(Shop shop);
 
     /**
-     * 根据商铺类型分页查询商铺信息
+     * 根据商铺类型分页查询商铺信息，传入坐标时按距离由近到远查询附近的商铺
      * @param typeId 商铺类型ID，用于筛选特定类型的商铺
      * @param current 当前页码，用于分页查询
-     * @return 包含指定类型商铺列表的结果对象
+     * @param x 经度，为空时按数据库分页查询
+     * @param y 纬度，为空时按数据库分页查询
+     * @param radius 搜索半径（米），为空时使用默认半径
+     * @return 包含指定类型商铺列表的结果对象，按坐标查询时包含距离
      */
-    Result queryShopByType(Integer typeId, Integer current);
+    Result queryShopByType(Integer typeId, Integer current, Double x, Double y, Double radius);
+
+    /**
+     * 游标分页查询指定类型的商铺，按id升序
+     * @param typeId 商铺类型ID
+     * @param lastId 上一页最后一条的id，第一页为空
+     * @return CursorResult
+     */
+    Result queryShopByTypeByCursor(Integer typeId, Long lastId);
 
     /**
      * 根据商铺名称关键字分页查询商铺信息
@@ -51,4 +62,10 @@ public interface IShopService extends IService<Shop> {
      * @return 包含匹配商铺列表的结果对象
      */
     Result queryShopByName(String name, Integer current);
+
+    /**
+     * 查询商铺缓存的命中统计
+     * @return 各级缓存的命中次数与命中率
+     */
+    Result queryCacheStats();
 }
@@ -33,6 +33,21 @@ public interface IUserService extends IService<User> {
      */
     Result login(LoginFormDTO loginForm, HttpSession session);
 
+    /**
+     * 用刷新令牌换取新的访问令牌
+     * @param refreshToken
+     * @return
+     */
+    Result refreshToken(String refreshToken);
+
+    /**
+     * 登出
+     * @param token 访问令牌或会话token
+     * @param refreshToken 刷新令牌，可为空
+     * @return
+     */
+    Result logout(String token, String refreshToken);
+
     /**
      * 根据id查询用户
      * @param userId 用户ID
@@ -4,6 +4,8 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  * 优惠券订单服务接口 - 定义优惠券订单管理相关的业务操作方法
@@ -29,4 +31,18 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
      */
     void createVoucherOrder(VoucherOrder voucherOrder);
 
+    /**
+     * 批量创建秒杀券订单
+     * @param voucherOrders 同一批消息解析出的订单
+     * @param outOfStock    数据库库存不足、未能创建的订单，由调用方在事务提交后转入死信队列
+     * @return 实际落库的订单数
+     */
+    int createVoucherOrders(List<VoucherOrder> voucherOrders, List<VoucherOrder> outOfStock);
+
+    /**
+     * 查询订单流水线的吞吐量与积压情况
+     * @return 统计信息
+     */
+    Result queryOrderPipelineStats();
+
 }
@@ -2,31 +2,44 @@ package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
-import com.hmdp.entity.Follow;
+import com.hmdp.entity.CursorResult;
 import com.hmdp.entity.ScrollResult;
-import com.hmdp.entity.User;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.BlogFeed;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.IdBloomFilters;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -38,14 +51,96 @@ import java.util.stream.Collectors;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
+    /**
+     * 热门排行时间衰减的起始时间 2026-01-01 00:00:00
+     */
+    private static final long HOT_EPOCH_SECONDS = 1767225600L;
+    private static final int HOT_LOAD_PAGE_SIZE = 1000;
+
+    private static final DefaultRedisScript<Long> BLOG_LIKE_SCRIPT;//点赞、取消点赞脚本
+    static {
+        BLOG_LIKE_SCRIPT = new DefaultRedisScript<>();
+        BLOG_LIKE_SCRIPT.setLocation(new ClassPathResource("blog_like.lua"));
+        BLOG_LIKE_SCRIPT.setResultType(Long.class);
+    }
+
     @Resource
     private IUserService userService;
     @Resource
     private StringRedisTemplate stringRedisTemplate;
     @Resource
-    private IFollowService followService;
+    private IdBloomFilters idBloomFilters;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private BlogFeed blogFeed;
+
+    @Value("${hmdp.blog.hot.gravity-hours:0}")
+    private long gravityHours;//发布时间每早该时长，排行分数相当于少1个赞，0表示不衰减
+
+    /**
+     * 启动时热门排行不存在则从数据库构建
+     */
+    @PostConstruct
+    public void initHotRank() {
+        try {
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(RedisConstants.BLOG_HOT_KEY))) {
+                rebuildHotRank();
+            }
+        } catch (Exception e) {
+            log.error("构建热门笔记排行失败", e);
+        }
+    }
+
+    /**
+     * 按主键游标分页读取tb_blog，写入临时key后整体替换热门排行
+     *
+     * @return 排行中的笔记数量
+     */
+    private long rebuildHotRank() {
+        String tmpKey = RedisConstants.BLOG_HOT_KEY + ":tmp:" + System.nanoTime();
+        long count = 0;
+        long lastId = 0;
+        while (true) {
+            List<Blog> blogs = list(new QueryWrapper<Blog>()
+                    .select("id", "liked", "create_time").gt("id", lastId)
+                    .orderByAsc("id").last("LIMIT " + HOT_LOAD_PAGE_SIZE));
+            if (!blogs.isEmpty()) {
+                lastId = blogs.get(blogs.size() - 1).getId();
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    for (Blog blog : blogs) {
+                        int liked = blog.getLiked() == null ? 0 : blog.getLiked();
+                        conn.zAdd(tmpKey, liked + hotTimeBonus(blog.getCreateTime()), blog.getId().toString());
+                    }
+                    return null;
+                });
+                count += blogs.size();
+            }
+            if (blogs.size() < HOT_LOAD_PAGE_SIZE) {
+                break;
+            }
+        }
+        if (count > 0) {
+            stringRedisTemplate.rename(tmpKey, RedisConstants.BLOG_HOT_KEY);
+        }
+        log.info("热门笔记排行构建完成，笔记数量: {}", count);
+        return count;
+    }
+
+    /**
+     * 发布时间带来的排行加分：每晚gravityHours发布多1分，点赞1次加1分，相当于旧笔记的点赞随时间衰减
+     * 加分只与发布时间有关，点赞时ZINCRBY即可维护，分数减去加分即为点赞数
+     */
+    private double hotTimeBonus(LocalDateTime createTime) {
+        if (gravityHours <= 0 || createTime == null) {
+            return 0;
+        }
+        return (double) (createTime.toEpochSecond(ZoneOffset.UTC) - HOT_EPOCH_SECONDS) / TimeUnit.HOURS.toSeconds(gravityHours);
+    }
 
     /**
      * 查询博客详情
@@ -55,49 +150,80 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
      */
     @Override
     public Result queryBlogById(Long id) {
-        //1. 查询blog
+        //1. 查询blog，布隆过滤器判断一定不存在时不再查询数据库
+        if (!idBloomFilters.mightContain(IdBloomFilters.BLOG, id)) {
+            return Result.fail("笔记不存在！");
+        }
         Blog blog = getById(id);
         if (blog == null) {
             // 404
+            idBloomFilters.recordFalsePositive(IdBloomFilters.BLOG);
             return Result.fail("笔记不存在！");
         }
-        //2. 查询blog有关的用户
-        queryBlogUser(blog);
-        //3. 查询blog是否被点赞
-        isBlogLiked(blog);
+        //2. 查询blog有关的用户和是否被点赞
+        hydrateBlogs(List.of(blog));
         return Result.ok(blog);
     }
 
-    private void queryBlogUser(Blog blog) {
-        Long userId = blog.getUserId();
-        User user = userService.getById(userId);
-        blog.setIcon(user.getIcon());
-        blog.setName(user.getNickName());
+    /**
+     * 填充一页博客的作者信息和当前用户的点赞状态
+     * 作者合并为一次批量查询（走用户缓存），点赞状态用一次管道批量ZSCORE，每页的往返次数与博客数量无关
+     *
+     * @param blogs 博客列表
+     */
+    private void hydrateBlogs(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
+        queryBlogUsers(blogs);
+        isBlogsLiked(blogs);
     }
 
     /**
-     * 检查博客是否被当前用户点赞
+     * 批量查询博客作者，作者信息走缓存，未命中的合并为一次数据库查询
      *
-     * @param blog 博客实体
+     * @param blogs 博客列表
      */
-    private void isBlogLiked(Blog blog) {
+    private void queryBlogUsers(List<Blog> blogs) {
+        List<Long> userIds = blogs.stream().map(Blog::getUserId).distinct().collect(Collectors.toList());
+        Map<Long, UserDTO> users = cacheClient.handleCacheBreakdownBatch(RedisConstants.CACHE_USER_KEY, userIds, UserDTO.class,
+                UserDTO::getId, ids -> userService.listByIds(ids).stream()
+                        .map(user -> BeanUtil.copyProperties(user, UserDTO.class)).toList(),
+                RedisConstants.CACHE_USER_TTL, TimeUnit.MINUTES);
+        for (Blog blog : blogs) {
+            UserDTO user = users.get(blog.getUserId());
+            if (user != null) {
+                blog.setIcon(user.getIcon());
+                blog.setName(user.getNickName());
+            }
+        }
+    }
+
+    /**
+     * 管道批量检查博客是否被当前用户点赞
+     *
+     * @param blogs 博客列表
+     */
+    private void isBlogsLiked(List<Blog> blogs) {
         // 1. 获取当前登录用户
         UserDTO user = UserHolder.getUser();
         if (user == null) {
             // 用户未登录，无需检查点赞状态
             return;
         }
-        Long userId = user.getId();
-
-        // 2. 获取博客ID
-        Long blogId = blog.getId();
-
-        // 3. 查询Redis中该博客的点赞集合
-        String key = RedisConstants.BLOG_LIKED_KEY + blogId;
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());
-
-        // 4. 判断是否已点赞
-        blog.setIsLike(score != null);
+        String userId = user.getId().toString();
+        // 2. 管道查询每篇博客的点赞集合 ZSCORE blog:liked:{id} userId
+        List<Object> scores = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Blog blog : blogs) {
+                conn.zScore(RedisConstants.BLOG_LIKED_KEY + blog.getId(), userId);
+            }
+            return null;
+        });
+        // 3. 判断是否已点赞
+        for (int i = 0; i < blogs.size(); i++) {
+            blogs.get(i).setIsLike(scores.get(i) != null);
+        }
     }
 
     /**
@@ -108,19 +234,70 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
      */
     @Override
     public Result queryHotBlog(Integer current) {
-        // 根据用户查询
-        Page<Blog> page = query()
-                .orderByDesc("liked")//按点赞量排序(降序)
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));//分页查询
-        // 获取当前页数据
-        List<Blog> records = page.getRecords();
-        // 查询用户
-        records.forEach(this::queryBlogUser);
-        return Result.ok(records);
+        //1.从热门排行分页查询笔记ID和分数 ZREVRANGE blog:hot start end WITHSCORES
+        long start = (long) (current - 1) * SystemConstants.MAX_PAGE_SIZE;
+        Set<ZSetOperations.TypedTuple<String>> typedTuples = stringRedisTemplate.opsForZSet()
+                .reverseRangeWithScores(RedisConstants.BLOG_HOT_KEY, start, start + SystemConstants.MAX_PAGE_SIZE - 1);
+        if (typedTuples == null || typedTuples.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        List<Long> ids = new ArrayList<>(typedTuples.size());
+        List<Double> scores = new ArrayList<>(typedTuples.size());
+        for (ZSetOperations.TypedTuple<String> typedTuple : typedTuples) {
+            ids.add(Long.valueOf(Objects.requireNonNull(typedTuple.getValue())));
+            scores.add(typedTuple.getScore());
+        }
+        //2.批量查询笔记缓存，按排行顺序返回副本（缓存对象可能被一级缓存共享）
+        Map<Long, Blog> blogMap = cacheClient.handleCacheBreakdownBatch(RedisConstants.CACHE_BLOG_KEY, ids, Blog.class,
+                Blog::getId, this::listByIds, RedisConstants.CACHE_BLOG_TTL, TimeUnit.MINUTES);
+        List<Blog> blogs = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Blog cached = blogMap.get(ids.get(i));
+            if (cached == null) {
+                continue;
+            }
+            Blog blog = BeanUtil.copyProperties(cached, Blog.class);
+            //2.1.点赞数以排行分数为准，缓存中的点赞数可能已过时
+            blog.setLiked((int) Math.round(scores.get(i) - hotTimeBonus(blog.getCreateTime())));
+            blogs.add(blog);
+        }
+        //3.批量查询作者和点赞状态
+        hydrateBlogs(blogs);
+        return Result.ok(blogs);
+    }
+
+    @Override
+    public Result queryHotBlogByCursor(Integer lastLiked, Long lastId) {
+        // 1.从上一页最后一条之后开始查询：liked < lastLiked 或 liked = lastLiked 且 id < lastId，多查一条判断是否还有下一页
+        List<Blog> records = query()
+                .and(lastLiked != null && lastId != null,
+                        w -> w.lt("liked", lastLiked).or(o -> o.eq("liked", lastLiked).lt("id", lastId)))
+                .orderByDesc("liked", "id")
+                .last("LIMIT " + (SystemConstants.MAX_PAGE_SIZE + 1))
+                .list();
+        CursorResult result = toCursorResult(records);
+        // 2.批量查询用户和点赞状态
+        hydrateBlogs(records.subList(0, Math.min(records.size(), SystemConstants.MAX_PAGE_SIZE)));
+        result.setLastLiked(result.getList().isEmpty() ? null : records.get(result.getList().size() - 1).getLiked());
+        return Result.ok(result);
     }
 
     /**
-     * 点赞博客
+     * 将多查一条的结果转换为游标分页结果
+     *
+     * @param records 最多MAX_PAGE_SIZE + 1条数据
+     * @return 游标分页结果
+     */
+    private CursorResult toCursorResult(List<Blog> records) {
+        boolean hasMore = records.size() > SystemConstants.MAX_PAGE_SIZE;
+        List<Blog> list = hasMore ? records.subList(0, SystemConstants.MAX_PAGE_SIZE) : records;
+        Long lastId = list.isEmpty() ? null : list.get(list.size() - 1).getId();
+        return new CursorResult(list, lastId, null, hasMore);
+    }
+
+    /**
+     * 点赞博客，已点赞则取消点赞
+     * Lua脚本一次完成点赞集合、待写回点赞数和热门排行的修改，点赞数由BlogLikeFlusher定时批量写回数据库
      *
      * @param id
      * @return
@@ -129,32 +306,17 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     public Result likeBlog(Long id) {
         //1.获取登录用户
         Long userId = UserHolder.getUser().getId();
-        //2.判断当前用户是否已经点赞
-        String key = RedisConstants.BLOG_LIKED_KEY + id;
-        Double score = stringRedisTemplate.opsForZSet().score(key, userId.toString());//获取当前用户点赞的分数
-        if (score != null) {
-            //3.如果已经点赞，取消点赞
-            //3.1.数据库点赞数量-1 对应的sql语句：update blog set liked = liked - 1 where id = ?
-            boolean isSuccess = update()
-                    .setSql("liked = liked - 1")
-                    .eq("id", id)
-                    .update();
-            //3.2.取消点赞，把用户从redis的set集合中移除
-            if (isSuccess) {
-                stringRedisTemplate.opsForZSet().remove(key, userId.toString());
-            }
-        } else {
-            //4.如果未点赞，点赞
-            //4.1.数据库点赞数量+1 对应的sql语句：update blog set liked = liked + 1 where id = ?
-            boolean isSuccess = update()
-                    .setSql("liked = liked + 1")
-                    .eq("id", id)
-                    .update();
-            //4.2.保存用户到redis的set集合中
-            if (isSuccess) {
-                stringRedisTemplate.opsForZSet().add(key, userId.toString(), System.currentTimeMillis());
-            }
+        //2.布隆过滤器判断笔记一定不存在时直接返回
+        if (!idBloomFilters.mightContain(IdBloomFilters.BLOG, id)) {
+            return Result.fail("笔记不存在！");
         }
+        //3.执行Lua脚本，切换点赞状态
+        stringRedisTemplate.execute(
+                BLOG_LIKE_SCRIPT,
+                List.of(RedisConstants.BLOG_LIKED_KEY + id, RedisConstants.BLOG_LIKE_DIRTY_KEY,
+                        RedisConstants.BLOG_LIKE_DIRTY_SINCE_KEY, RedisConstants.BLOG_HOT_KEY),
+                id.toString(), userId.toString(), String.valueOf(System.currentTimeMillis())
+        );
         return Result.ok();
     }
 
@@ -206,17 +368,12 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if (!isSuccess) {
             return Result.fail("新增笔记失败！");
         }
-        // 查询笔记作者的所有粉丝 select * from tb_follow where follow_id = ?
-        List<Follow> follows = followService.query().eq("follow_id", user.getId()).list();
-        for (Follow follow : follows) {
-            Long userId = follow.getUserId();
-            // 判断是否为空
-            if (userId == null) {
-                continue;
-            }
-            String key = RedisConstants.FEED_KEY + userId;
-            stringRedisTemplate.opsForZSet().add(key, blog.getId().toString(), System.currentTimeMillis());
-        }
+        idBloomFilters.add(IdBloomFilters.BLOG, blog.getId());
+        // 加入热门排行，新笔记的点赞数为0
+        stringRedisTemplate.opsForZSet().add(RedisConstants.BLOG_HOT_KEY, blog.getId().toString(),
+                hotTimeBonus(blog.getCreateTime() == null ? LocalDateTime.now() : blog.getCreateTime()));
+        // 写入作者发件箱，粉丝数未达到阈值时异步推送到粉丝收件箱
+        blogFeed.publish(user.getId(), blog.getId(), System.currentTimeMillis());
         // 返回id
         return Result.ok(blog.getId());
     }
@@ -240,6 +397,20 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         return Result.ok(records);
     }
 
+    @Override
+    public Result queryMyBlogByCursor(Long lastId) {
+        // 获取登录用户
+        UserDTO user = UserHolder.getUser();
+        // 根据用户查询，从上一页最后一条之后开始，多查一条判断是否还有下一页
+        List<Blog> records = query()
+                .eq("user_id", user.getId())
+                .lt(lastId != null, "id", lastId)
+                .orderByDesc("id")
+                .last("LIMIT " + (SystemConstants.MAX_PAGE_SIZE + 1))
+                .list();
+        return Result.ok(toCursorResult(records));
+    }
+
     /**
      * 根据用户ID查询其发布的博客
      * 该方法用于查询指定用户发布的所有博客内容
@@ -256,11 +427,26 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
                 .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
         // 2.获取当前页数据
         List<Blog> records = page.getRecords();
-        // 3.查询用户信息
-        records.forEach(this::queryBlogUser);
+        // 3.批量查询用户信息和点赞状态
+        hydrateBlogs(records);
         return Result.ok(records);
     }
 
+    @Override
+    public Result queryBlogByUserIdByCursor(Long id, Long lastId) {
+        // 1.根据用户查询，从上一页最后一条之后开始，多查一条判断是否还有下一页
+        List<Blog> records = query()
+                .eq("user_id", id)
+                .lt(lastId != null, "id", lastId)
+                .orderByDesc("id")
+                .last("LIMIT " + (SystemConstants.MAX_PAGE_SIZE + 1))
+                .list();
+        CursorResult result = toCursorResult(records);
+        // 2.批量查询用户信息和点赞状态
+        hydrateBlogs(records.subList(0, Math.min(records.size(), SystemConstants.MAX_PAGE_SIZE)));
+        return Result.ok(result);
+    }
+
     /**
      * 查询当前用户所关注的用户所发布的博客
      *
@@ -272,10 +458,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     public Result queryBlogOfFollow(Long max, Integer offset) {
         //1.获取当前用户
         Long userId = UserHolder.getUser().getId();
-        //2.查询收件箱 ZREVRANGEBYSCORE key max min LIMIT offset count
-        String key = RedisConstants.FEED_KEY + userId;
-        Set<ZSetOperations.TypedTuple<String>> typedTuples = stringRedisTemplate.opsForZSet()
-                .reverseRangeByScoreWithScores(key, 0, max, offset, 2);//获取当前用户所关注的用户所发布的博客
+        //2.查询收件箱和关注的大V发件箱并归并 ZREVRANGEBYSCORE key max min LIMIT 0 offset+count
+        List<ZSetOperations.TypedTuple<String>> typedTuples = blogFeed.read(userId, max, offset, 2);//获取当前用户所关注的用户所发布的博客
         //3.非空判断
         if (typedTuples == null || typedTuples.isEmpty()) {
             return Result.ok();
@@ -302,12 +486,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         List<Blog> blogs = query().in("id", ids)//查询指定id的博客
                 .last("ORDER BY FIELD(id," + idStr + ")")//按顺序返回
                 .list();//转成List
-        for (Blog blog : blogs) {
-            //5.1.查询blog有关的用户
-            queryBlogUser(blog);//查询blog有关的用户
-            //5.2.查询blog是否被点赞
-            isBlogLiked(blog);
-        }
+        //5.1.批量查询blog有关的用户和是否被点赞
+        hydrateBlogs(blogs);
 
         //6.封装并返回
         return Result.ok(new ScrollResult(blogs, minTime, os));
@@ -8,14 +8,22 @@ import com.hmdp.mapper.FollowMapper;
 import com.hmdp.service.IFollowService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.FollowBitmapGraph;
+import com.hmdp.utils.FollowGraph;
+import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
 import jakarta.annotation.Resource;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -29,10 +37,12 @@ import java.util.Set;
 @Service
 public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> implements IFollowService {
 
-    @Resource
-    private StringRedisTemplate stringRedisTemplate;
     @Resource
     private IUserService userService;
+    @Resource
+    private FollowGraph followGraph;
+    @Resource
+    private FollowBitmapGraph followBitmapGraph;
 
     /**
      * 关注用户
@@ -45,33 +55,38 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
     public Result follow(Long followUserId, Boolean isFollow) {
         //1.获取当前用户
         Long userId = UserHolder.getUser().getId();
-        String key = "follow:" + userId;
-        //2.判断是否关注
+        //2.判断是否关注，状态未变化时直接返回，避免重复插入和重复计数
+        if (followGraph.isFollow(userId, followUserId) == isFollow) {
+            return Result.ok();
+        }
+        boolean isSuccess;
         if (isFollow) {
             //3.关注，新增数据
             Follow follow = new Follow();
             follow.setUserId(userId);
             follow.setFollowUserId(followUserId);
-            boolean isSuccess = save(follow);
-            if (isSuccess){
-                //把关注的id放入redis的set集合中
-                stringRedisTemplate.opsForSet().add(key, followUserId.toString());
+            try {
+                isSuccess = save(follow);
+            } catch (DuplicateKeyException e) {
+                //并发的关注请求已经插入（唯一索引uk_user_follow），由该请求更新关注集合和计数，这里视为已关注
+                return Result.ok();
             }
-        }else {
+        } else {
             //4.取消关注，删除数据
-            boolean isSuccess = remove(new QueryWrapper<Follow>()
+            isSuccess = remove(new QueryWrapper<Follow>()
                     .eq("user_id", userId)
                     .eq("follow_user_id", followUserId));
-            if (isSuccess){
-                //把取消关注的id从redis的set集合中移除
-                stringRedisTemplate.opsForSet().remove(key, followUserId.toString());
-            }
+        }
+        if (isSuccess) {
+            //5.修改redis中的关注集合和关注数、粉丝数，以及进程内的关注关系图
+            followGraph.onFollow(userId, followUserId, isFollow);
+            followBitmapGraph.onFollow(userId, followUserId, isFollow);
         }
         return Result.ok();
     }
 
     /**
-     * 取消关注
+     * 判断是否关注
      *
      * @param followUserId
      * @return
@@ -80,14 +95,20 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
     public Result isFollow(Long followUserId) {
         //1.获取当前用户
         Long userId = UserHolder.getUser().getId();
-        //2.查询是否关注
-        Long count = query()
-                .eq("user_id", userId)
-                .eq("follow_user_id", followUserId)
-                .count();
+        //2.查询是否关注 SISMEMBER follow:{userId} followUserId
+        return Result.ok(followGraph.isFollow(userId, followUserId));
+    }
 
-        //3.判断
-        return Result.ok(count > 0);
+    /**
+     * 批量判断是否关注
+     *
+     * @param followUserIds
+     * @return
+     */
+    @Override
+    public Result isFollow(List<Long> followUserIds) {
+        Long userId = UserHolder.getUser().getId();
+        return Result.ok(followGraph.isFollow(userId, followUserIds));
     }
 
     /**
@@ -99,17 +120,66 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
     public Result followCommons(Long id) {
         //1.获取当前用户
         Long userId = UserHolder.getUser().getId();
-        String key1 = "follow:" + userId;
-        //2.求交集
-        String key2 = "follow:" + id;
-        Set<String> intersect = stringRedisTemplate.opsForSet().intersect(key1, key2);
-        //3.解析集合
-        if (intersect == null || intersect.isEmpty()){
+        //2.求交集，开启进程内关系图时对两个压缩位图求交集，否则使用redis的SINTER
+        List<Long> ids;
+        if (followBitmapGraph.isEnabled()) {
+            ids = followBitmapGraph.commonFollowees(userId, id);
+        } else {
+            Set<String> intersect = followGraph.commonFollowees(userId, id);
+            ids = intersect == null ? Collections.emptyList() : intersect.stream().map(Long::valueOf).toList();
+        }
+        //3.判断是否为空
+        if (ids.isEmpty()){
             return Result.ok(Collections.emptyList());
         }
-        List<Long> ids = intersect.stream().map(Long::valueOf).toList();
         //4.根据id查询用户
         List<User> users = userService.listByIds(ids);
         return Result.ok(users);
     }
+
+    /**
+     * 查询用户的关注数和粉丝数
+     * @param id
+     * @return
+     */
+    @Override
+    public Result queryFollowCounts(Long id) {
+        return Result.ok(followBitmapGraph.isEnabled() ? followBitmapGraph.counts(id) : followGraph.counts(id));
+    }
+
+    /**
+     * 好友推荐：当前用户关注的人所关注的用户，按共同关注人数排序
+     * @param limit
+     * @return
+     */
+    @Override
+    public Result suggestFollows(Integer limit) {
+        if (!followBitmapGraph.isEnabled()) {
+            return Result.fail("好友推荐未开启");
+        }
+        //1.从关系图中查询推荐的用户
+        Long userId = UserHolder.getUser().getId();
+        List<FollowBitmapGraph.Suggestion> suggestions = followBitmapGraph.suggest(userId, Math.min(limit, SystemConstants.MAX_PAGE_SIZE * 10));
+        if (suggestions.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        //2.批量查询用户，按推荐顺序返回
+        List<Long> ids = suggestions.stream().map(FollowBitmapGraph.Suggestion::userId).toList();
+        Map<Long, User> users = userService.listByIds(ids).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        List<Map<String, Object>> result = new ArrayList<>(suggestions.size());
+        for (FollowBitmapGraph.Suggestion suggestion : suggestions) {
+            User user = users.get(suggestion.userId());
+            if (user == null) {
+                continue;
+            }
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", user.getId());
+            item.put("nickName", user.getNickName());
+            item.put("icon", user.getIcon());
+            item.put("mutual", suggestion.mutual());
+            result.add(item);
+        }
+        return Result.ok(result);
+    }
 }
@@ -1,28 +1,47 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
+import com.hmdp.entity.CursorResult;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.IdBloomFilters;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RedisData;
+import com.hmdp.utils.ShopNameIndex;
+import com.hmdp.utils.ShopSpatialIndex;
 import com.hmdp.utils.SystemConstants;
 import jakarta.annotation.Resource;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.domain.geo.GeoReference;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -36,11 +55,19 @@ import java.util.concurrent.TimeUnit;
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
+    private static final int GEO_LOAD_PAGE_SIZE = 1000;
+    private static final String GEO_PLACEHOLDER = "0";//GEO集合的占位成员，保证没有坐标的类型也有集合，查询时跳过
     private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(RedisConstants.CACHE_REBUILD_THREAD_POOL_SIZE);//创建线程池
     @Resource
     private StringRedisTemplate stringRedisTemplate;
     @Autowired
     private CacheClient cacheClient;
+    @Resource
+    private IdBloomFilters idBloomFilters;
+    @Resource
+    private ShopSpatialIndex spatialIndex;
+    @Resource
+    private ShopNameIndex nameIndex;
 
     /**
      * 根据商铺ID查询商铺信息
@@ -50,10 +77,15 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
      */
     @Override
     public Result queryById(Long id) {
+        //布隆过滤器判断id一定不存在，直接返回，不访问Redis和数据库
+        if (!idBloomFilters.mightContain(IdBloomFilters.SHOP, id)) {
+            return Result.fail("商铺不存在");
+        }
         //使用逻辑过期解决缓存击穿
         Shop shop = cacheClient.handleCacheBreakdown(RedisConstants.CACHE_SHOP_KEY, id, Shop.class,
                 this::getById, RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
         if (shop == null) {
+            idBloomFilters.recordFalsePositive(IdBloomFilters.SHOP);
             return Result.fail("商铺不存在");
         }
         return Result.ok(shop);
@@ -74,10 +106,27 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             return Result.fail("店铺id不能为空");
         }
         //3.存在，则更新数据库
+        Shop old = getById(id);
+        if (old == null) {
+            return Result.fail("店铺不存在");
+        }
         updateById(shop);
-        //4.删除缓存
-        stringRedisTemplate.delete(RedisConstants.CACHE_SHOP_KEY + id);
-        //5.返回成功
+        //4.删除缓存，同时失效各节点的本地缓存
+        cacheClient.delete(RedisConstants.CACHE_SHOP_KEY + id);
+        //5.类型或坐标变化时同步GEO集合
+        Long typeId = shop.getTypeId() != null ? shop.getTypeId() : old.getTypeId();
+        if (old.getTypeId() != null && !old.getTypeId().equals(typeId)) {
+            removeShopGeo(old.getTypeId(), id);
+        }
+        Shop updated = new Shop();
+        updated.setId(id);
+        updated.setTypeId(typeId);
+        updated.setX(shop.getX() != null ? shop.getX() : old.getX());
+        updated.setY(shop.getY() != null ? shop.getY() : old.getY());
+        addShopGeo(updated);
+        spatialIndex.refresh(id);
+        nameIndex.refresh(id);
+        //6.返回成功
         return Result.ok();
     }
 
@@ -92,6 +141,11 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     public Result saveShop(Shop shop) {
         // 写入数据库
         save(shop);
+        // 加入布隆过滤器和所属类型的GEO集合
+        idBloomFilters.add(IdBloomFilters.SHOP, shop.getId());
+        addShopGeo(shop);
+        spatialIndex.refresh(shop.getId());
+        nameIndex.refresh(shop.getId());
         // 返回店铺id
         return Result.ok(shop.getId());
     }
@@ -105,18 +159,222 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
      * @return 包含指定类型商铺列表的结果对象
      */
     @Override
-    public Result queryShopByType(Integer typeId, Integer current) {
-        // 根据类型分页查询
-        Page<Shop> page = query()
+    public Result queryShopByType(Integer typeId, Integer current, Double x, Double y, Double radius) {
+        //1.判断是否需要根据坐标查询
+        if (x == null || y == null) {
+            // 不需要坐标查询，根据类型分页查询
+            Page<Shop> page = query()
+                    .eq("type_id", typeId)
+                    .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
+            // 返回数据
+            return Result.ok(page.getRecords());
+        }
+        //2.计算分页参数，GEOSEARCH不支持偏移量和最小距离，只能查询前end条后跳过前from条
+        int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
+        int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
+        double searchRadius = radius == null ? SystemConstants.DEFAULT_SEARCH_RADIUS
+                : Math.min(radius, SystemConstants.MAX_SEARCH_RADIUS);
+        //3.按照距离排序查询前end个商铺，开启进程内空间索引时不访问Redis，结果：shopId -> distance
+        Map<Long, Double> nearby = spatialIndex.isEnabled()
+                ? searchNearbyByIndex(typeId, x, y, searchRadius, end)
+                : searchNearbyByGeo(typeId, x, y, searchRadius, end);
+        if (nearby.size() <= from) {
+            // 没有下一页了
+            return Result.ok(Collections.emptyList());
+        }
+        //4.截取from ~ end的部分
+        List<Long> ids = new ArrayList<>(nearby.keySet()).subList(from, nearby.size());
+        //5.通过商铺缓存一次批量查询商铺，未命中的合并为一次数据库查询
+        Map<Long, Shop> shopMap = cacheClient.handleCacheBreakdownBatch(RedisConstants.CACHE_SHOP_KEY, ids, Shop.class,
+                Shop::getId, this::listByIds, RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        //6.按距离顺序组装结果，复制后再设置距离，避免修改一级缓存中的共享对象
+        List<Shop> shops = new ArrayList<>(ids.size());
+        for (Long shopId : ids) {
+            Shop shop = shopMap.get(shopId);
+            if (shop == null) {
+                continue;
+            }
+            Shop copy = BeanUtil.copyProperties(shop, Shop.class);
+            copy.setDistance(nearby.get(shopId));
+            shops.add(copy);
+        }
+        //7.返回
+        return Result.ok(shops);
+    }
+
+    @Override
+    public Result queryShopByTypeByCursor(Integer typeId, Long lastId) {
+        // 从上一页最后一条之后开始查询，多查一条判断是否还有下一页
+        List<Shop> records = query()
                 .eq("type_id", typeId)
-                .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+                .gt(lastId != null, "id", lastId)
+                .orderByAsc("id")
+                .last("LIMIT " + (SystemConstants.DEFAULT_PAGE_SIZE + 1))
+                .list();
+        boolean hasMore = records.size() > SystemConstants.DEFAULT_PAGE_SIZE;
+        List<Shop> list = hasMore ? records.subList(0, SystemConstants.DEFAULT_PAGE_SIZE) : records;
+        Long nextId = list.isEmpty() ? null : list.get(list.size() - 1).getId();
+        return Result.ok(new CursorResult(list, nextId, null, hasMore));
+    }
+
+    /**
+     * 通过Redis GEO查询附近的商铺
+     *
+     * @return shopId -> distance，按距离由近到远排列
+     */
+    private Map<Long, Double> searchNearbyByGeo(Integer typeId, double x, double y, double radius, int limit) {
+        String key = RedisConstants.SHOP_GEO_KEY + typeId;
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(key))) {
+            loadShopGeo(typeId);
+        }
+        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo().search(
+                key,
+                GeoReference.fromCoordinate(x, y),
+                new Distance(radius, RedisGeoCommands.DistanceUnit.METERS),
+                RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().sortAscending().limit(limit));
+        Map<Long, Double> nearby = new LinkedHashMap<>();
+        if (results == null) {
+            return nearby;
+        }
+        for (GeoResult<RedisGeoCommands.GeoLocation<String>> result : results.getContent()) {
+            String member = result.getContent().getName();
+            if (!GEO_PLACEHOLDER.equals(member)) {
+                nearby.put(Long.valueOf(member), result.getDistance().getValue());
+            }
+        }
+        return nearby;
+    }
+
+    /**
+     * 通过进程内空间索引查询附近的商铺
+     *
+     * @return shopId -> distance，按距离由近到远排列
+     */
+    private Map<Long, Double> searchNearbyByIndex(Integer typeId, double x, double y, double radius, int limit) {
+        Map<Long, Double> nearby = new LinkedHashMap<>();
+        for (ShopSpatialIndex.Neighbor neighbor : spatialIndex.searchRadius(typeId, x, y, radius, limit)) {
+            nearby.put(neighbor.id(), neighbor.distance());
+        }
+        return nearby;
+    }
+
+    /**
+     * 从数据库加载一个类型的所有商铺坐标到GEO集合，按主键游标分页读取
+     * 先写入临时key再RENAMENX，加载过程中其他请求不会看到不完整的集合，已有其他节点发布集合时丢弃本次结果
+     * 集合中总有一个占位成员，没有坐标的类型也只加载一次；临时key带有效期，加载中途失败或宕机时不会遗留
+     * 发布后重放加载期间记录的变更，避免加载开始后保存或修改类型的商铺被旧快照覆盖
+     *
+     * @param typeId 商铺类型ID
+     */
+    private void loadShopGeo(Integer typeId) {
+        String key = RedisConstants.SHOP_GEO_KEY + typeId;
+        String tmpKey = key + ":tmp:" + UUID.randomUUID();
+        boolean published = false;
+        try {
+            //1.写入占位成员并设置有效期
+            stringRedisTemplate.opsForGeo().add(tmpKey, new Point(0, 0), GEO_PLACEHOLDER);
+            stringRedisTemplate.expire(tmpKey, RedisConstants.SHOP_GEO_LOAD_TTL, TimeUnit.MINUTES);
+            //2.按主键游标分页写入商铺坐标
+            long lastId = 0;
+            while (true) {
+                List<Shop> shops = query().select("id", "x", "y")
+                        .eq("type_id", typeId).gt("id", lastId)
+                        .orderByAsc("id").last("LIMIT " + GEO_LOAD_PAGE_SIZE).list();
+                List<RedisGeoCommands.GeoLocation<String>> locations = new ArrayList<>(shops.size());
+                for (Shop shop : shops) {
+                    lastId = shop.getId();
+                    if (shop.getX() != null && shop.getY() != null) {
+                        locations.add(new RedisGeoCommands.GeoLocation<>(shop.getId().toString(), new Point(shop.getX(), shop.getY())));
+                    }
+                }
+                if (!locations.isEmpty()) {
+                    stringRedisTemplate.opsForGeo().add(tmpKey, locations);
+                }
+                if (shops.size() < GEO_LOAD_PAGE_SIZE) {
+                    break;
+                }
+            }
+            //3.集合不存在时发布，RENAME会保留临时key的有效期，发布后移除
+            published = Boolean.TRUE.equals(stringRedisTemplate.renameIfAbsent(tmpKey, key));
+            if (published) {
+                stringRedisTemplate.persist(key);
+            }
+        } finally {
+            if (!published) {
+                stringRedisTemplate.delete(tmpKey);
+            }
+        }
+        //4.重放加载期间记录的变更
+        replayPendingGeo(typeId);
+    }
+
+    /**
+     * 重放集合未加载期间记录的商铺变更：按数据库中的当前类型和坐标写入或移除
+     * 记录不删除，到期自动清理，同时进行的其他加载也能重放
+     *
+     * @param typeId 商铺类型ID
+     */
+    private void replayPendingGeo(Integer typeId) {
+        Set<String> members = stringRedisTemplate.opsForSet().members(RedisConstants.SHOP_GEO_PENDING_KEY + typeId);
+        if (members == null || members.isEmpty()) {
+            return;
+        }
+        List<Long> ids = members.stream().map(Long::valueOf).collect(Collectors.toList());
+        Map<Long, Shop> shopMap = query().select("id", "type_id", "x", "y").in("id", ids).list().stream()
+                .collect(Collectors.toMap(Shop::getId, shop -> shop));
+        String key = RedisConstants.SHOP_GEO_KEY + typeId;
+        for (Long id : ids) {
+            Shop shop = shopMap.get(id);
+            if (shop != null && Long.valueOf(typeId).equals(shop.getTypeId()) && shop.getX() != null && shop.getY() != null) {
+                stringRedisTemplate.opsForGeo().add(key, new Point(shop.getX(), shop.getY()), id.toString());
+            } else {
+                stringRedisTemplate.opsForZSet().remove(key, id.toString());
+            }
+        }
+    }
+
+    /**
+     * 将商铺坐标写入所属类型的GEO集合，集合尚未加载时记录变更，由加载发布集合后重放
+     *
+     * @param shop 商铺
+     */
+    private void addShopGeo(Shop shop) {
+        if (shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+            return;
+        }
+        String key = RedisConstants.SHOP_GEO_KEY + shop.getTypeId();
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(key)) || recordPendingGeo(shop.getTypeId(), shop.getId())) {
+            stringRedisTemplate.opsForGeo().add(key, new Point(shop.getX(), shop.getY()), shop.getId().toString());
+        }
+    }
+
+    /**
+     * 将商铺从类型的GEO集合中移除（修改类型后），集合尚未加载时记录变更，由加载发布集合后重放
+     */
+    private void removeShopGeo(Long typeId, Long shopId) {
+        String key = RedisConstants.SHOP_GEO_KEY + typeId;
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(key)) || recordPendingGeo(typeId, shopId)) {
+            stringRedisTemplate.opsForZSet().remove(key, shopId.toString());
+        }
+    }
+
+    /**
+     * 集合尚未加载时记录变更的商铺
+     * 记录后再次判断集合是否存在：加载在记录之前已发布时不会再重放，由调用方直接写入集合
+     *
+     * @return 集合是否已存在
+     */
+    private boolean recordPendingGeo(Long typeId, Long shopId) {
+        String pendingKey = RedisConstants.SHOP_GEO_PENDING_KEY + typeId;
+        stringRedisTemplate.opsForSet().add(pendingKey, shopId.toString());
+        stringRedisTemplate.expire(pendingKey, RedisConstants.SHOP_GEO_LOAD_TTL, TimeUnit.MINUTES);
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(RedisConstants.SHOP_GEO_KEY + typeId));
     }
 
     /**
      * 根据商铺名称关键字分页查询商铺信息
      * 此方法提供模糊搜索功能，根据商铺名称中的关键词进行匹配查询
+     * 开启名称索引时在内存中匹配名称和商圈，按评分、销量排序
      *
      * @param name    商铺名称关键字，支持模糊匹配
      * @param current 当前页码，用于分页查询
@@ -124,6 +382,24 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
      */
     @Override
     public Result queryShopByName(String name, Integer current) {
+        // 有关键字时从进程内名称索引查询，不再对tb_shop做LIKE扫描
+        if (StrUtil.isNotBlank(name) && nameIndex.isEnabled()) {
+            ShopNameIndex.Page page = nameIndex.search(name, Math.max(current, 1), SystemConstants.MAX_PAGE_SIZE);
+            if (page.ids().isEmpty()) {
+                return Result.ok(Collections.emptyList(), (long) page.total());
+            }
+            // 通过商铺缓存批量查询当前页的商铺，按索引排名返回
+            Map<Long, Shop> shopMap = cacheClient.handleCacheBreakdownBatch(RedisConstants.CACHE_SHOP_KEY, page.ids(), Shop.class,
+                    Shop::getId, this::listByIds, RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            List<Shop> shops = new ArrayList<>(page.ids().size());
+            for (Long shopId : page.ids()) {
+                Shop shop = shopMap.get(shopId);
+                if (shop != null) {
+                    shops.add(shop);
+                }
+            }
+            return Result.ok(shops, (long) page.total());
+        }
         // 根据类型分页查询
         Page<Shop> page = query()
                 .like(StrUtil.isNotBlank(name), "name", name)
@@ -131,4 +407,14 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         // 返回数据
         return Result.ok(page.getRecords());
     }
-}
\ No newline at end of file
+
+    /**
+     * 查询商铺缓存的命中统计
+     *
+     * @return 各级缓存的命中统计
+     */
+    @Override
+    public Result queryCacheStats() {
+        return Result.ok(cacheClient.stats());
+    }
+}
@@ -1,7 +1,6 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
-import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.lang.UUID;
 import cn.hutool.core.util.RandomUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
@@ -11,6 +10,8 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.LoginSessions;
+import com.hmdp.utils.StatelessTokens;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RegexUtils;
 import com.hmdp.utils.UserHolder;
@@ -23,9 +24,7 @@ import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import static com.hmdp.utils.RedisConstants.*;
@@ -45,6 +44,10 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
 
     @Resource
     StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private LoginSessions loginSessions;
+    @Resource
+    private StatelessTokens statelessTokens;
 
     /**
      * 发送手机验证码并且验证保存
@@ -99,23 +102,58 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             // 不存在，创建用户
             user = createUserWithPhone(phone);
         }
-        // 6.保存用户信息到redis中
-        // 6.1.生成随机token,作为登录令牌
-        String token = UUID.randomUUID().toString(true);
-        // 6.2.将User对象转为HashMap存储
         UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
-        Map<String, Object> userMap = BeanUtil.beanToMap(userDTO, new HashMap<>(),
-                CopyOptions.create()
-                        .setIgnoreNullValue(true)
-                        .setFieldValueEditor((fieldName, fieldValue) -> fieldValue.toString()));
-        //6.3.存储
-        String tokenKey=LOGIN_USER_KEY+token;
-        stringRedisTemplate.opsForHash().putAll(tokenKey, userMap);
-        // 6.4.设置token有效期
-        stringRedisTemplate.expire(tokenKey, LOGIN_USER_TTL, TimeUnit.MINUTES);
-        // 7.返回token
+        // 6.无状态模式：签发签名的访问令牌和保存在redis中的刷新令牌
+        if (statelessTokens.isEnabled()) {
+            return Result.ok(statelessTokens.issue(userDTO));
+        }
+        // 7.保存用户信息到redis中
+        // 7.1.生成随机token,作为登录令牌
+        String token = UUID.randomUUID().toString(true);
+        // 7.2.一次脚本调用存储用户字段并设置token有效期，同时写入本节点的会话缓存
+        loginSessions.save(token, userDTO);
+        // 8.返回token
         return Result.ok(token);
     }
+
+    /**
+     * 用刷新令牌换取新的访问令牌和刷新令牌
+     * @param refreshToken
+     * @return
+     */
+    @Override
+    public Result refreshToken(String refreshToken) {
+        // 1.校验并删除刷新令牌，每个刷新令牌只能使用一次
+        Long userId = statelessTokens.consumeRefreshToken(refreshToken);
+        if (userId == null) {
+            return Result.fail("登录已过期，请重新登录！");
+        }
+        // 2.查询最新的用户信息
+        User user = getById(userId);
+        if (user == null) {
+            return Result.fail("用户不存在！");
+        }
+        // 3.签发新的令牌
+        return Result.ok(statelessTokens.issue(BeanUtil.copyProperties(user, UserDTO.class)));
+    }
+
+    /**
+     * 登出
+     * @param token
+     * @param refreshToken
+     * @return
+     */
+    @Override
+    public Result logout(String token, String refreshToken) {
+        if (StatelessTokens.isStateless(token)) {
+            // 无状态令牌：吊销访问令牌直到其过期，删除刷新令牌
+            statelessTokens.revoke(token, refreshToken);
+        } else {
+            // redis会话：删除会话，并通知所有节点失效本地会话缓存
+            loginSessions.remove(token);
+        }
+        return Result.ok();
+    }
     private User createUserWithPhone(String phone) {
         // 创建用户
         User user = new User();
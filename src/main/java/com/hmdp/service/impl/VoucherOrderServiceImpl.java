@@ -2,36 +2,59 @@ package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
 import com.hmdp.dto.Result;
+import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.IdBloomFilters;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillSoldOutGate;
+import com.hmdp.utils.SeckillStockBuckets;
 import com.hmdp.utils.UserHolder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
 import org.springframework.data.redis.connection.stream.Consumer;
 import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
 import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
 import org.springframework.data.redis.connection.stream.StreamOffset;
 import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -54,8 +77,33 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private StringRedisTemplate stringRedisTemplate;//Redis模板类
     @Resource
     private RedissonClient redissonClient;//Redisson客户端
+    @Resource
+    private SeckillSoldOutGate soldOutGate;//本地售罄标记
+    @Resource
+    private IdBloomFilters idBloomFilters;
+    @Resource
+    private SeckillStockBuckets stockBuckets;//分桶库存
+
+    @Lazy
+    @Resource
+    private IVoucherOrderService proxy;//代理对象，供消费者线程调用事务方法
 
-    private IVoucherOrderService proxy;//代理对象
+    @Value("${hmdp.seckill.order.consumers:4}")
+    private int consumerCount;//消费者线程数
+    @Value("${hmdp.seckill.order.batch-size:500}")
+    private int batchSize;//单次读取的最大消息数
+    @Value("${hmdp.seckill.order.block-ms:2000}")
+    private long blockMillis;//阻塞等待时长
+    @Value("${hmdp.seckill.order.error-backoff-ms:100}")
+    private long errorBackoffMillis;//消费出错后的首次退避时长
+    @Value("${hmdp.seckill.order.error-backoff-max-ms:5000}")
+    private long errorBackoffMaxMillis;//连续出错时的最大退避时长
+    @Value("${hmdp.seckill.order.recovery.min-idle-ms:60000}")
+    private long minIdleMillis;//pending消息空闲多久后被认领
+    @Value("${hmdp.seckill.order.recovery.max-deliveries:5}")
+    private long maxDeliveries;//最大投递次数，超过后转入死信队列
+    @Value("${hmdp.seckill.order.recovery.interval-ms:5000}")
+    private long recoveryIntervalMillis;//恢复任务执行间隔
 
     private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
     static {
@@ -64,7 +112,20 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         SECKILL_SCRIPT.setResultType(Long.class);//设置返回结果类型为Long
     }
 
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();//创建线程池
+    private ExecutorService seckillOrderExecutor;//订单消费者线程池
+    private ScheduledExecutorService recoveryExecutor;//pending-list恢复任务线程
+    private volatile boolean running = true;//消费者运行标志
+
+    //订单流水线统计
+    private final long startMillis = System.currentTimeMillis();
+    private final LongAdder consumedCount = new LongAdder();//已读取的消息数
+    private final LongAdder persistedCount = new LongAdder();//已落库的订单数
+    private final LongAdder batchCount = new LongAdder();//已ACK的批次数
+    private final LongAdder failedBatchCount = new LongAdder();//失败的批次数
+    private final LongAdder reclaimedCount = new LongAdder();//从pending-list认领重试的消息数
+    private final LongAdder deadLetterCount = new LongAdder();//转入死信队列的消息数
+    private final AtomicLong lastBatchCostMillis = new AtomicLong();//最近一批的处理耗时
+    private final AtomicLong lastDelayMillis = new AtomicLong();//最近一批消息从入队到ACK的延迟
  /*   private final BlockingQueue<VoucherOrder> orderTasks = new ArrayBlockingQueue<>(1024*1024);//创建阻塞队列
 
      * 初始化创建线程池，将订单信息保存到数据库中
@@ -112,103 +173,272 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     }*/
 
     /**
-     * 创建订单使用消息队列防止订单重复创建
+     * 初始化订单消费者组，并按配置启动多个消费者线程
+     */
+    @PostConstruct
+    public void init() {
+        createOrderGroupIfAbsent();
+        String namePrefix = consumerNamePrefix();
+        seckillOrderExecutor = Executors.newFixedThreadPool(consumerCount);
+        for (int i = 0; i < consumerCount; i++) {
+            seckillOrderExecutor.submit(new VoucherOrderHandler(namePrefix + "-c" + i));
+        }
+        recoveryExecutor = Executors.newSingleThreadScheduledExecutor();
+        recoveryExecutor.scheduleWithFixedDelay(new PendingOrderRecoveryHandler(namePrefix + "-recovery"),
+                recoveryIntervalMillis, recoveryIntervalMillis, TimeUnit.MILLISECONDS);
+        log.info("订单消费者已启动，消费者数: {}, 批量大小: {}", consumerCount, batchSize);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        seckillOrderExecutor.shutdown();
+        recoveryExecutor.shutdown();
+    }
+
+    /**
+     * 创建订单消息流的消费者组（XGROUP CREATE stream.orders g1 0 MKSTREAM），已存在时忽略
+     */
+    private void createOrderGroupIfAbsent() {
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands().xGroupCreate(
+                    RedisConstants.STREAM_ORDER_KEY.getBytes(StandardCharsets.UTF_8),
+                    RedisConstants.STREAM_ORDER_GROUP, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            //BUSYGROUP，消费者组已存在
+            log.debug("订单消费者组已存在: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 生成当前节点的消费者名前缀：主机名-进程号，保证多节点、多线程下消费者名唯一
+     */
+    private static String consumerNamePrefix() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "unknown";
+        }
+        return host + "-" + ProcessHandle.current().pid();
+    }
+
+    /**
+     * 订单消费者：批量读取消息队列中的订单，批量落库后一次性ACK
      */
     private class VoucherOrderHandler implements Runnable {
+
+        private final Consumer consumer;
+
+        VoucherOrderHandler(String consumerName) {
+            this.consumer = Consumer.from(RedisConstants.STREAM_ORDER_GROUP, consumerName);
+        }
+
         @Override
         public void run() {
-            while (true) {
+            long backoffMillis = 0;
+            while (running) {
                 try {
-                    //1.获取消息队列中的订单信息 XREADGROUP GROUP g1 c1 COUNT 1 BLOCK 1000 STREAMS streams.order >
+                    //1.批量获取消息队列中的订单信息 XREADGROUP GROUP g1 {consumer} COUNT {batchSize} BLOCK {blockMs} STREAMS stream.orders >
                     List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),//创建消费者组
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),//创建消息读取的选项
-                            StreamOffset.create(RedisConstants.STREAM_ORDER_KEY, ReadOffset.lastConsumed())//创建消息的偏移量
+                            consumer,
+                            StreamReadOptions.empty().count(batchSize).block(Duration.ofMillis(blockMillis)),
+                            StreamOffset.create(RedisConstants.STREAM_ORDER_KEY, ReadOffset.lastConsumed())
                     );
                     //2.判断订单信息是否为空
                     if (list == null || list.isEmpty()) {
                         //如果为空，说明没有消息，继续下一次循环
                         continue;
                     }
-                    //3.如果获取成功
-                    //3.1解析订单信息
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> values = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-                    //3.2解析完成，创建订单
-                    handleVoucherOrder(voucherOrder);
-                    createVoucherOrder(voucherOrder);
-                    //4.ACK确认 SACK steam.orders g1 id
-                    stringRedisTemplate.opsForStream().acknowledge(RedisConstants.STREAM_ORDER_KEY, "g1", record.getId());
-                }catch (Exception e){
+                    //3.批量创建订单并ACK
+                    handleOrderBatch(list);
+                    backoffMillis = 0;
+                } catch (Exception e) {
+                    //失败的消息留在pending-list中，由恢复任务在空闲超时后认领重试，不阻塞在线消费
                     log.error("处理订单异常", e);
-                    handlerPendingList();
+                    //4.退避后再读取，Redis或数据库不可用时连续出错的间隔逐次翻倍，避免空转刷日志
+                    backoffMillis = backoffMillis == 0 ? errorBackoffMillis : Math.min(backoffMillis * 2, errorBackoffMaxMillis);
+                    try {
+                        Thread.sleep(backoffMillis);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
                 }
             }
         }
     }
+
     /**
-     * 处理pending-list中的订单信息
+     * pending-list恢复任务：定期回收空闲超时的消息，与在线消费者互不阻塞
      */
-    private void handlerPendingList() {
-        while (true) {
+    private class PendingOrderRecoveryHandler implements Runnable {
+
+        private final String consumerName;
+
+        PendingOrderRecoveryHandler(String consumerName) {
+            this.consumerName = consumerName;
+        }
+
+        @Override
+        public void run() {
             try {
-                //1.获取pending-list中的订单信息 XREADGROUP GROUP g1 c1 COUNT 1 BLOCK 2000 STREAMS s1 0
-                List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                        Consumer.from("g1", "c1"),
-                        StreamReadOptions.empty().count(1),
-                        StreamOffset.create("stream.orders", ReadOffset.from("0"))
-                );
-                //2.判断订单信息是否为空
-                if (list == null || list.isEmpty()) {
-                    //如果为空，说明没有异常消息，结束循环
-                    break;
-                }
-                //3.解析消息队列中的订单信息
-                MapRecord<String, Object, Object> record = list.get(0);
-                Map<Object, Object> values = record.getValue();
-                VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-                //4.创建订单
-                createVoucherOrder(voucherOrder);
-                //5.确认消息XACK
-                stringRedisTemplate.opsForStream().acknowledge("s1", "g1", record.getId());
-            }catch (Exception e){
+                recoverPendingOrders(consumerName);
+            } catch (Exception e) {
                 log.error("处理pending-list订单异常", e);
-                try {
-                    Thread.sleep(2000);
-                } catch (InterruptedException ex) {
-                    ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 分页扫描pending-list，回收空闲超过阈值的消息（其消费者已宕机或处理失败）
+     * 投递次数未超过重试上限的消息重新处理，超过上限的消息转入死信队列
+     *
+     * @param consumerName 恢复任务使用的消费者名
+     */
+    private void recoverPendingOrders(String consumerName) {
+        Range<String> range = Range.unbounded();
+        while (running) {
+            //1.分页查询pending-list XPENDING stream.orders g1 {start} + {batchSize}
+            PendingMessages page = stringRedisTemplate.opsForStream()
+                    .pending(RedisConstants.STREAM_ORDER_KEY, RedisConstants.STREAM_ORDER_GROUP, range, batchSize);
+            if (page == null || page.isEmpty()) {
+                return;
+            }
+            //2.只处理空闲超时的消息，并按投递次数分为重试和死信两类
+            List<RecordId> retryIds = new ArrayList<>();
+            Map<RecordId, Long> deadDeliveries = new LinkedHashMap<>();
+            for (PendingMessage message : page) {
+                if (message.getElapsedTimeSinceLastDelivery().toMillis() < minIdleMillis) {
+                    continue;
+                }
+                if (message.getTotalDeliveryCount() >= maxDeliveries) {
+                    deadDeliveries.put(message.getId(), message.getTotalDeliveryCount());
+                } else {
+                    retryIds.add(message.getId());
                 }
             }
+            if (!deadDeliveries.isEmpty()) {
+                moveToDeadLetter(consumerName, deadDeliveries);
+            }
+            if (!retryIds.isEmpty()) {
+                retryPendingOrders(consumerName, retryIds);
+            }
+            //3.不足一页说明已扫描到末尾，否则从最后一条消息之后继续
+            if (page.size() < batchSize) {
+                return;
+            }
+            RecordId last = page.get(page.size() - 1).getId();
+            range = Range.rightUnbounded(Range.Bound.inclusive(RecordId.of(last.getTimestamp(), last.getSequence() + 1).getValue()));
         }
     }
 
     /**
-     * 处理订单信息
-     * @param voucherOrder
+     * 认领空闲消息并重新创建订单，整批失败时逐条重试，避免单条异常消息拖累整批
+     *
+     * @param consumerName 恢复任务使用的消费者名
+     * @param ids          待重试的消息id
      */
-    private void handleVoucherOrder(VoucherOrder voucherOrder) {
-        //1.获取用户id
-        Long userId = voucherOrder.getUserId();
-        //2.创建锁对象
-        RLock lock = redissonClient.getLock(RedisConstants.LOCK_ORDER_KEY + userId);
-        //3.获取锁
-        boolean isLock = lock.tryLock();
-        //4.判断是否获取锁成功
-        if (!isLock) {
-            //4.获取锁失败，返回错误信息
-            log.error("获取锁失败");
+    private void retryPendingOrders(String consumerName, List<RecordId> ids) {
+        //1.认领消息 XCLAIM stream.orders g1 {consumer} {minIdle} id1 id2 ...，并发认领时只有一个节点能成功
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().claim(
+                RedisConstants.STREAM_ORDER_KEY, RedisConstants.STREAM_ORDER_GROUP, consumerName,
+                Duration.ofMillis(minIdleMillis), ids.toArray(RecordId[]::new));
+        if (records == null || records.isEmpty()) {
             return;
         }
+        reclaimedCount.add(records.size());
+        //2.整批重试
         try {
-            //5.创建订单
-            proxy.createVoucherOrder(voucherOrder);
-        }finally {
-            //6.释放锁
-            lock.unlock();
+            handleOrderBatch(records);
+            return;
+        } catch (Exception e) {
+            log.warn("pending订单批量重试失败，改为逐条重试，数量: {}", records.size(), e);
+        }
+        //3.逐条重试，失败的消息留在pending-list中，投递次数达到上限后转入死信队列
+        for (MapRecord<String, Object, Object> record : records) {
+            try {
+                handleOrderBatch(Collections.singletonList(record));
+            } catch (Exception e) {
+                log.error("pending订单重试失败，消息id: {}", record.getId(), e);
+            }
         }
     }
 
+    /**
+     * 将超过重试上限的消息转入死信队列 stream.orders.dlq，并从pending-list中ACK
+     *
+     * @param consumerName   恢复任务使用的消费者名
+     * @param deadDeliveries 消息id与其投递次数
+     */
+    private void moveToDeadLetter(String consumerName, Map<RecordId, Long> deadDeliveries) {
+        //1.先认领，保证多个节点不会重复写入死信
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().claim(
+                RedisConstants.STREAM_ORDER_KEY, RedisConstants.STREAM_ORDER_GROUP, consumerName,
+                Duration.ofMillis(minIdleMillis), deadDeliveries.keySet().toArray(RecordId[]::new));
+        if (records == null || records.isEmpty()) {
+            return;
+        }
+        //2.写入死信队列，附带原消息id和投递次数
+        for (MapRecord<String, Object, Object> record : records) {
+            Map<Object, Object> fields = new LinkedHashMap<>(record.getValue());
+            fields.put("sourceId", record.getId().getValue());
+            fields.put("deliveryCount", String.valueOf(deadDeliveries.get(record.getId())));
+            stringRedisTemplate.opsForStream().add(RedisConstants.STREAM_ORDER_DLQ_KEY, fields);
+            log.error("订单消息超过重试上限，已转入死信队列，消息id: {}, 内容: {}", record.getId(), record.getValue());
+        }
+        //3.从pending-list中移除
+        RecordId[] ids = records.stream().map(MapRecord::getId).toArray(RecordId[]::new);
+        stringRedisTemplate.opsForStream().acknowledge(RedisConstants.STREAM_ORDER_KEY, RedisConstants.STREAM_ORDER_GROUP, ids);
+        deadLetterCount.add(records.size());
+    }
+
+    /**
+     * 批量处理一批订单消息：解析、在一个事务内批量落库，库存不足的订单转入死信队列，然后一次XACK整批消息
+     *
+     * @param records 同一次XREADGROUP读取到的消息
+     */
+    private void handleOrderBatch(List<MapRecord<String, Object, Object>> records) {
+        long begin = System.currentTimeMillis();
+        //1.解析订单信息
+        List<VoucherOrder> orders = new ArrayList<>(records.size());
+        Map<Long, MapRecord<String, Object, Object>> recordOfOrder = new LinkedHashMap<>();
+        for (MapRecord<String, Object, Object> record : records) {
+            VoucherOrder order = BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true);
+            orders.add(order);
+            recordOfOrder.put(order.getId(), record);
+        }
+        consumedCount.add(records.size());
+        //2.批量创建订单，失败时不ACK，消息留在pending-list中等待重试
+        int saved;
+        List<VoucherOrder> outOfStock = new ArrayList<>();
+        try {
+            saved = proxy.createVoucherOrders(orders, outOfStock);
+        } catch (RuntimeException e) {
+            failedBatchCount.increment();
+            throw e;
+        }
+        //3.事务已提交，库存不足的订单转入死信队列后再ACK，不静默丢弃
+        for (VoucherOrder order : outOfStock) {
+            MapRecord<String, Object, Object> record = recordOfOrder.get(order.getId());
+            Map<Object, Object> fields = new LinkedHashMap<>(record.getValue());
+            fields.put("sourceId", record.getId().getValue());
+            fields.put("reason", "outOfStock");
+            stringRedisTemplate.opsForStream().add(RedisConstants.STREAM_ORDER_DLQ_KEY, fields);
+            log.error("数据库库存不足，订单已转入死信队列，消息id: {}, 内容: {}", record.getId(), record.getValue());
+        }
+        deadLetterCount.add(outOfStock.size());
+        //4.一次ACK整批消息 XACK stream.orders g1 id1 id2 ...
+        RecordId[] ids = records.stream().map(MapRecord::getId).toArray(RecordId[]::new);
+        stringRedisTemplate.opsForStream().acknowledge(RedisConstants.STREAM_ORDER_KEY, RedisConstants.STREAM_ORDER_GROUP, ids);
+        //5.记录统计信息，消息id的时间戳部分即为入队时间
+        long end = System.currentTimeMillis();
+        persistedCount.add(saved);
+        batchCount.increment();
+        lastBatchCostMillis.set(end - begin);
+        lastDelayMillis.set(end - records.get(records.size() - 1).getId().getTimestamp());
+    }
+
     /**
      * 秒杀优惠券
      *
@@ -255,29 +485,81 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Override
     @Transactional
     public Result seckillVoucher(Long voucherId) {
-        //1.获取当前用户
+        //1.判断券是否存在及本地售罄标记，不存在或已售罄直接返回，不访问Redis
+        if (!idBloomFilters.mightContain(IdBloomFilters.VOUCHER, voucherId)) {
+            return Result.fail("优惠券不存在");
+        }
+        if (soldOutGate.isSoldOut(voucherId)) {
+            return Result.fail("库存不足");
+        }
+        //2.获取当前用户
         Long userId = UserHolder.getUser().getId();
-        //2.获取订单id
+        //3.获取订单id
         Long orderId = redisIdWorker.nextId(RedisConstants.SECKILL_VOUCHER_ORDER);
-        //3.执行lua脚本
-        Long result = stringRedisTemplate.execute(
-                SECKILL_SCRIPT,
-                Collections.emptyList(),//不传递任何键名，提供一个空集合
-                voucherId.toString(), userId.toString(), String.valueOf(orderId)//作为ARGV的参数：ARGV[1]=voucherId, ARGV[2]=userId, ARGV[3]=orderId
-        );
-        //4.判断结果是否为0
-        int r= result.intValue();
+        //4.执行lua脚本，分桶的券按桶逐个执行脚本，从用户所属的桶开始扣减
+        int bucketCount = stockBuckets.bucketCount(voucherId);
+        int r = bucketCount > 1
+                ? seckillFromBuckets(voucherId, userId, orderId, bucketCount)
+                : stringRedisTemplate.execute(
+                        SECKILL_SCRIPT,
+                        Collections.emptyList(),//不传递任何键名，提供一个空集合
+                        voucherId.toString(), userId.toString(), String.valueOf(orderId)//作为ARGV的参数：ARGV[1]=voucherId, ARGV[2]=userId, ARGV[3]=orderId
+                ).intValue();
+        //5.判断结果是否为0
+        if (r == 1) {
+            //5.1.库存不足，标记售罄，后续请求在本地直接拒绝
+            soldOutGate.markSoldOut(voucherId);
+            return Result.fail("库存不足");
+        }
+        if (r == 2) {
+            //5.2.说明没有购买资格
+            return Result.fail("不能重复下单");
+        }
+        if (r == 3) {
+            //5.3.库存尚未加载到Redis，不是售罄，不标记
+            return Result.fail("活动库存未就绪，请稍后重试");
+        }
         if (r != 0) {
-            //4.1.不为0，说明没有购买资格
-            return Result.fail(r == 1 ? "库存不足" : "不能重复下单");
+            //5.4.下单消息发送失败
+            return Result.fail("下单失败，请稍后重试");
         }
-        //5.获取代理对象
-        proxy = (IVoucherOrderService) AopContext.currentProxy();
 
-        //5.返回订单id
+        //6.返回订单id
         return Result.ok(orderId);
     }
 
+    /**
+     * 分桶券的秒杀：每次脚本调用只访问一个桶的key，扣减成功后单独发送下单消息，发送失败时回滚扣减
+     *
+     * @return 0：成功 1：库存不足 2：重复下单 3：库存未加载 -1：下单消息发送失败
+     */
+    private int seckillFromBuckets(Long voucherId, Long userId, Long orderId, int bucketCount) {
+        //1.扣减库存
+        int bucket = stockBuckets.deduct(voucherId, userId, bucketCount);
+        if (bucket == SeckillStockBuckets.SOLD_OUT) {
+            return 1;
+        }
+        if (bucket == SeckillStockBuckets.DUPLICATE) {
+            return 2;
+        }
+        if (bucket == SeckillStockBuckets.NOT_LOADED) {
+            return 3;
+        }
+        //2.发送消息到队列中 XADD stream.orders * userId {userId} voucherId {voucherId} id {orderId}
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("userId", userId.toString());
+        fields.put("voucherId", voucherId.toString());
+        fields.put("id", orderId.toString());
+        try {
+            stringRedisTemplate.opsForStream().add(RedisConstants.STREAM_ORDER_KEY, fields);
+            return 0;
+        } catch (RuntimeException e) {
+            log.error("发送下单消息失败，回滚库存，券ID: {}, 用户ID: {}", voucherId, userId, e);
+            stockBuckets.rollback(voucherId, userId, bucketCount, bucket);
+            return -1;
+        }
+    }
+
     /**
      * 创建秒杀券订单
      * @param voucherOrder
@@ -335,4 +617,103 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
          //5.扣减成功，创建订单
          save(voucherOrder);
     }
+
+    /**
+     * 批量创建秒杀券订单
+     * 同一批订单在一个事务内完成：一次查询过滤已存在的订单，每张券只扣减一次库存，多行INSERT写入订单
+     * 某张券的库存不足以创建该券的全部订单时，按消息顺序创建库存允许的部分，其余放入outOfStock
+     *
+     * @param voucherOrders 同一批消息解析出的订单
+     * @param outOfStock    数据库库存不足、未能创建的订单
+     * @return 实际落库的订单数
+     */
+    @Override
+    @Transactional
+    public int createVoucherOrders(List<VoucherOrder> voucherOrders, List<VoucherOrder> outOfStock) {
+        //1.批内去重，同一用户同一张券只保留一单（重复投递的消息也在这里合并）
+        Map<String, VoucherOrder> orderMap = new LinkedHashMap<>();
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            orderMap.putIfAbsent(voucherOrder.getUserId() + ":" + voucherOrder.getVoucherId(), voucherOrder);
+        }
+        //2.一次查询过滤掉已经落库的订单 select user_id, voucher_id from tb_voucher_order where user_id in (...) and voucher_id in (...)
+        Set<Long> userIds = orderMap.values().stream().map(VoucherOrder::getUserId).collect(Collectors.toSet());
+        Set<Long> voucherIds = orderMap.values().stream().map(VoucherOrder::getVoucherId).collect(Collectors.toSet());
+        query().select("user_id", "voucher_id")
+                .in("user_id", userIds)
+                .in("voucher_id", voucherIds)
+                .list()
+                .forEach(existing -> orderMap.remove(existing.getUserId() + ":" + existing.getVoucherId()));
+        if (orderMap.isEmpty()) {
+            return 0;
+        }
+        //3.按券分组，每张券只扣减一次库存 update tb_seckill_voucher set stock = stock - n where voucher_id = ? and stock >= n
+        Map<Long, List<VoucherOrder>> ordersOfVoucher = orderMap.values().stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, LinkedHashMap::new, Collectors.toList()));
+        List<VoucherOrder> toSave = new ArrayList<>(orderMap.size());
+        ordersOfVoucher.forEach((voucherId, orders) -> {
+            int n = orders.size();
+            boolean success = seckillVoucherService.update()
+                    .setSql("stock = stock - " + n)
+                    .eq("voucher_id", voucherId)
+                    .ge("stock", n)
+                    .update();
+            if (success) {
+                toSave.addAll(orders);
+                return;
+            }
+            //库存不足以创建全部订单：锁定库存行，只扣减剩余的库存 select stock from tb_seckill_voucher where voucher_id = ? for update
+            SeckillVoucher voucher = seckillVoucherService.query().select("stock")
+                    .eq("voucher_id", voucherId)
+                    .last("FOR UPDATE")
+                    .one();
+            int k = voucher == null ? 0 : Math.max(0, Math.min(voucher.getStock(), n));
+            if (k > 0) {
+                seckillVoucherService.update()
+                        .setSql("stock = stock - " + k)
+                        .eq("voucher_id", voucherId)
+                        .ge("stock", k)
+                        .update();
+                toSave.addAll(orders.subList(0, k));
+            }
+            outOfStock.addAll(orders.subList(k, n));
+            log.error("数据库库存不足，券ID: {}, 订单数: {}, 已创建: {}", voucherId, n, k);
+        });
+        //4.多行批量插入订单
+        if (!toSave.isEmpty()) {
+            getBaseMapper().insertBatch(toSave);
+        }
+        return toSave.size();
+    }
+
+    /**
+     * 查询订单流水线的吞吐量与积压情况
+     *
+     * @return 统计信息
+     */
+    @Override
+    public Result queryOrderPipelineStats() {
+        long persisted = persistedCount.sum();
+        double seconds = Math.max(1, System.currentTimeMillis() - startMillis) / 1000.0;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("consumers", consumerCount);
+        stats.put("batchSize", batchSize);
+        stats.put("consumed", consumedCount.sum());
+        stats.put("persisted", persisted);
+        stats.put("batches", batchCount.sum());
+        stats.put("failedBatches", failedBatchCount.sum());
+        stats.put("ordersPerSecond", persisted / seconds);
+        stats.put("lastBatchCostMillis", lastBatchCostMillis.get());
+        stats.put("lastDelayMillis", lastDelayMillis.get());
+        stats.put("reclaimed", reclaimedCount.sum());
+        stats.put("deadLettered", deadLetterCount.sum());
+        stats.put("soldOutVouchers", soldOutGate.getSoldOutCount());
+        stats.put("soldOutShed", soldOutGate.getShedCount());
+        //积压：已投递未ACK的消息数 XPENDING stream.orders g1，以及消息流总长度 XLEN stream.orders
+        PendingMessagesSummary pending = stringRedisTemplate.opsForStream()
+                .pending(RedisConstants.STREAM_ORDER_KEY, RedisConstants.STREAM_ORDER_GROUP);
+        stats.put("pending", pending == null ? 0 : pending.getTotalPendingMessages());
+        stats.put("streamLength", stringRedisTemplate.opsForStream().size(RedisConstants.STREAM_ORDER_KEY));
+        stats.put("deadLetterLength", stringRedisTemplate.opsForStream().size(RedisConstants.STREAM_ORDER_DLQ_KEY));
+        return Result.ok(stats);
+    }
 }
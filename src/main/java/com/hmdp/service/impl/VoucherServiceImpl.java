@@ -10,14 +10,19 @@ import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.IdBloomFilters;
 import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.SeckillSoldOutGate;
+import com.hmdp.utils.SeckillStockBuckets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import jakarta.annotation.Resource;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -39,6 +44,15 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     private StringRedisTemplate stringRedisTemplate;
     @Resource
     private CacheClient cacheClient;
+    @Resource
+    private SeckillSoldOutGate soldOutGate;
+    @Resource
+    private SeckillStockBuckets stockBuckets;
+    @Resource
+    private IdBloomFilters idBloomFilters;
+
+    @Value("${hmdp.seckill.stock.buckets:1}")
+    private int defaultStockBuckets;
 
     /**
      * 同步数据库中的秒杀券库存到Redis
@@ -58,12 +72,20 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         // 获取当前数据库中的库存
         Integer dbStock = seckillVoucher.getStock();
         
-        // 更新Redis中的库存
-        stringRedisTemplate.opsForValue().set(
-            RedisConstants.SECKILL_STOCK_KEY + voucherId, 
-            dbStock.toString()
-        );
+        // 更新Redis中的库存，分桶的券按原桶数重新拆分
+        int bucketCount = stockBuckets.bucketCount(voucherId);
+        if (bucketCount > 1) {
+            stockBuckets.initStock(voucherId, dbStock, bucketCount);
+        } else {
+            stringRedisTemplate.opsForValue().set(
+                RedisConstants.SECKILL_STOCK_KEY + voucherId, 
+                dbStock.toString()
+            );
+        }
         
+        // 清除各节点的本地售罄标记
+        soldOutGate.clear(voucherId);
+
         log.info("已同步数据库库存到Redis，券ID: {}, 库存: {}", voucherId, dbStock);
         return Result.ok();
     }
@@ -76,6 +98,10 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
      */
     @Override
     public Result queryVoucherOfShop(Long shopId) {
+        // 布隆过滤器判断店铺一定不存在，直接返回空列表
+        if (!idBloomFilters.mightContain(IdBloomFilters.SHOP, shopId)) {
+            return Result.ok(Collections.emptyList());
+        }
         // 尝试从缓存获取数据
         String cacheKey = RedisConstants.VOUCHER_OF_SHOP_KEY + shopId;
         
@@ -134,9 +160,15 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
+        idBloomFilters.add(IdBloomFilters.VOUCHER, voucher.getId());
 
-        //保存秒杀库存到Redis中
-        stringRedisTemplate.opsForValue().set(RedisConstants.SECKILL_STOCK_KEY + voucher.getId(), voucher.getStock().toString());
+        //保存秒杀库存到Redis中，热点券拆分到多个桶
+        int bucketCount = voucher.getStockBuckets() != null ? voucher.getStockBuckets() : defaultStockBuckets;
+        if (bucketCount > 1) {
+            stockBuckets.initStock(voucher.getId(), voucher.getStock(), bucketCount);
+        } else {
+            stringRedisTemplate.opsForValue().set(RedisConstants.SECKILL_STOCK_KEY + voucher.getId(), voucher.getStock().toString());
+        }
         
         // 清理相关缓存，确保数据一致性
         stringRedisTemplate.delete(RedisConstants.VOUCHER_OF_SHOP_KEY + voucher.getShopId());
@@ -173,6 +205,7 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         String seckillStockKey = RedisConstants.SECKILL_STOCK_KEY + voucherId;
         stringRedisTemplate.delete(seckillStockKey);
         log.info("清理秒杀库存缓存: {}", seckillStockKey);
+        stockBuckets.remove(voucherId);
         
         // 5. 清理相关的店铺优惠券列表缓存，确保删除后列表中不再显示
         String shopVoucherKey = RedisConstants.VOUCHER_OF_SHOP_KEY + shopId;
@@ -185,6 +218,7 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     @Override
     public Result addVoucher(Voucher voucher) {
         save(voucher);
+        idBloomFilters.add(IdBloomFilters.VOUCHER, voucher.getId());
         return Result.ok(voucher.getId());
     }
 }
\ No newline at end of file
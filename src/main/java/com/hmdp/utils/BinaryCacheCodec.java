@@ -0,0 +1,325 @@
+package com.hmdp.utils;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 二进制编解码器 - 按类的字段结构（schema）顺序写入字段值，不写字段名
+ * 数据格式：[schema指纹 4字节][空值位图][非空字段值...]
+ * 整数使用zigzag变长编码，字符串为变长长度+UTF-8字节，时间为秒数+纳秒
+ * schema指纹由字段名和类型计算，实体类字段变化后旧数据解码失败，由调用方按未命中处理
+ * 仅支持字段类型为基本类型及其包装类、String、LocalDateTime、LocalDate的实体，如Shop、Voucher、Blog、UserDTO
+ */
+public class BinaryCacheCodec implements CacheCodec {
+
+    public static final byte ID = 2;
+
+    private static final int LONG = 0;
+    private static final int INT = 1;
+    private static final int SHORT = 2;
+    private static final int BYTE = 3;
+    private static final int BOOLEAN = 4;
+    private static final int DOUBLE = 5;
+    private static final int FLOAT = 6;
+    private static final int STRING = 7;
+    private static final int DATE_TIME = 8;
+    private static final int DATE = 9;
+
+    private static final ClassValue<Schema> SCHEMAS = new ClassValue<>() {
+        @Override
+        protected Schema computeValue(Class<?> type) {
+            return new Schema(type);
+        }
+    };
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        Schema schema = SCHEMAS.get(value.getClass());
+        Writer writer = new Writer();
+        writer.writeInt(schema.fingerprint);
+        //1.写入空值位图
+        byte[] nulls = new byte[(schema.fields.length + 7) >>> 3];
+        Object[] values = new Object[schema.fields.length];
+        for (int i = 0; i < schema.fields.length; i++) {
+            values[i] = schema.get(i, value);
+            if (values[i] == null) {
+                nulls[i >>> 3] |= (byte) (1 << (i & 7));
+            }
+        }
+        writer.write(nulls);
+        //2.按schema顺序写入非空字段
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                writeValue(writer, schema.kinds[i], values[i]);
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, int offset, int length, Class<T> type) {
+        Schema schema = SCHEMAS.get(type);
+        Reader reader = new Reader(bytes, offset, offset + length);
+        if (reader.readInt() != schema.fingerprint) {
+            throw new IllegalStateException("缓存数据与类结构不一致: " + type.getName());
+        }
+        int nullsLength = (schema.fields.length + 7) >>> 3;
+        int nullsOffset = reader.position;
+        if (nullsOffset + nullsLength > reader.limit) {
+            throw new IllegalStateException("缓存数据不完整");
+        }
+        reader.position += nullsLength;
+        T t = schema.newInstance(type);
+        for (int i = 0; i < schema.fields.length; i++) {
+            if ((bytes[nullsOffset + (i >>> 3)] & (1 << (i & 7))) == 0) {
+                schema.set(i, t, readValue(reader, schema.kinds[i]));
+            }
+        }
+        return t;
+    }
+
+    private static void writeValue(Writer writer, int kind, Object value) {
+        switch (kind) {
+            case LONG -> writer.writeVarLong(zigzag((Long) value));
+            case INT -> writer.writeVarLong(zigzag((Integer) value));
+            case SHORT -> writer.writeVarLong(zigzag((Short) value));
+            case BYTE -> writer.writeVarLong(zigzag((Byte) value));
+            case BOOLEAN -> writer.write((Boolean) value ? 1 : 0);
+            case DOUBLE -> writer.writeLong(Double.doubleToRawLongBits((Double) value));
+            case FLOAT -> writer.writeInt(Float.floatToRawIntBits((Float) value));
+            case STRING -> {
+                byte[] utf8 = ((String) value).getBytes(StandardCharsets.UTF_8);
+                writer.writeVarLong(utf8.length);
+                writer.write(utf8);
+            }
+            case DATE_TIME -> {
+                LocalDateTime time = (LocalDateTime) value;
+                writer.writeVarLong(zigzag(time.toEpochSecond(ZoneOffset.UTC)));
+                writer.writeVarLong(time.getNano());
+            }
+            case DATE -> writer.writeVarLong(zigzag(((LocalDate) value).toEpochDay()));
+            default -> throw new IllegalStateException("未知的字段类型: " + kind);
+        }
+    }
+
+    private static Object readValue(Reader reader, int kind) {
+        return switch (kind) {
+            case LONG -> unzigzag(reader.readVarLong());
+            case INT -> (int) unzigzag(reader.readVarLong());
+            case SHORT -> (short) unzigzag(reader.readVarLong());
+            case BYTE -> (byte) unzigzag(reader.readVarLong());
+            case BOOLEAN -> reader.read() != 0;
+            case DOUBLE -> Double.longBitsToDouble(reader.readLong());
+            case FLOAT -> Float.intBitsToFloat(reader.readInt());
+            case STRING -> reader.readString((int) reader.readVarLong());
+            case DATE_TIME -> LocalDateTime.ofEpochSecond(unzigzag(reader.readVarLong()), (int) reader.readVarLong(), ZoneOffset.UTC);
+            case DATE -> LocalDate.ofEpochDay(unzigzag(reader.readVarLong()));
+            default -> throw new IllegalStateException("未知的字段类型: " + kind);
+        };
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * 类的字段结构：非static、非transient字段（含父类），按字段名排序
+     */
+    private static final class Schema {
+        private final Field[] fields;
+        private final int[] kinds;
+        private final int fingerprint;
+        private final Constructor<?> constructor;
+
+        private Schema(Class<?> type) {
+            List<Field> list = new ArrayList<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                        list.add(field);
+                    }
+                }
+            }
+            list.sort(Comparator.comparing(Field::getName));
+            this.fields = list.toArray(new Field[0]);
+            this.kinds = new int[fields.length];
+            StringBuilder signature = new StringBuilder();
+            for (int i = 0; i < fields.length; i++) {
+                fields[i].setAccessible(true);
+                kinds[i] = kindOf(type, fields[i]);
+                signature.append(fields[i].getName()).append(':').append(kinds[i]).append(';');
+            }
+            this.fingerprint = signature.toString().hashCode();
+            try {
+                this.constructor = type.getDeclaredConstructor();
+                this.constructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException("二进制缓存编码要求无参构造方法: " + type.getName(), e);
+            }
+        }
+
+        private static int kindOf(Class<?> type, Field field) {
+            Class<?> t = field.getType();
+            if (t == Long.class || t == long.class) return LONG;
+            if (t == Integer.class || t == int.class) return INT;
+            if (t == Short.class || t == short.class) return SHORT;
+            if (t == Byte.class || t == byte.class) return BYTE;
+            if (t == Boolean.class || t == boolean.class) return BOOLEAN;
+            if (t == Double.class || t == double.class) return DOUBLE;
+            if (t == Float.class || t == float.class) return FLOAT;
+            if (t == String.class) return STRING;
+            if (t == LocalDateTime.class) return DATE_TIME;
+            if (t == LocalDate.class) return DATE;
+            throw new IllegalArgumentException("二进制缓存编码不支持的字段类型: "
+                    + type.getName() + "." + field.getName() + " (" + t.getName() + ")");
+        }
+
+        private Object get(int i, Object target) {
+            try {
+                return fields[i].get(target);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void set(int i, Object target, Object value) {
+            try {
+                fields[i].set(target, value);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private <T> T newInstance(Class<T> type) {
+            try {
+                return type.cast(constructor.newInstance());
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static final class Writer {
+        private byte[] buf = new byte[128];
+        private int size;
+
+        private void ensure(int n) {
+            if (size + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, size + n));
+            }
+        }
+
+        private void write(int b) {
+            ensure(1);
+            buf[size++] = (byte) b;
+        }
+
+        private void write(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+        }
+
+        private void writeInt(int v) {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                buf[size++] = (byte) (v >>> shift);
+            }
+        }
+
+        private void writeLong(long v) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[size++] = (byte) (v >>> shift);
+            }
+        }
+
+        private void writeVarLong(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[size++] = (byte) v;
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buf;
+        private final int limit;
+        private int position;
+
+        private Reader(byte[] buf, int offset, int limit) {
+            this.buf = buf;
+            this.position = offset;
+            this.limit = limit;
+        }
+
+        private int read() {
+            if (position >= limit) {
+                throw new IllegalStateException("缓存数据不完整");
+            }
+            return buf[position++] & 0xFF;
+        }
+
+        private int readInt() {
+            int v = 0;
+            for (int i = 0; i < 4; i++) {
+                v = (v << 8) | read();
+            }
+            return v;
+        }
+
+        private long readLong() {
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | read();
+            }
+            return v;
+        }
+
+        private long readVarLong() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+            throw new IllegalStateException("缓存数据格式错误");
+        }
+
+        private String readString(int length) {
+            if (length < 0 || position + length > limit) {
+                throw new IllegalStateException("缓存数据不完整");
+            }
+            String s = new String(buf, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return s;
+        }
+    }
+}
@@ -0,0 +1,495 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Follow;
+import com.hmdp.mapper.BlogMapper;
+import com.hmdp.mapper.FollowMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 关注流（推拉结合）
+ * 每篇笔记都写入作者的发件箱 feed:out:{作者ID}，并向消息流 stream.feed 投递一个推送任务，发布请求的耗时与粉丝数无关
+ * 推送线程池消费任务：粉丝数低于阈值的作者分批管道推送到粉丝收件箱 feed:{用户ID}；达到阈值的作者记入大V集合 feed:big 且不再推送，
+ * 读取时从关注的大V发件箱拉取，与收件箱多路归并
+ * 任务完成后XACK并XDEL，消息流长度即为积压；处理失败的任务留在pending-list中，空闲超时后被认领重试（推送是幂等的ZADD）
+ * 收件箱和发件箱都只保留最新的若干条，限制内存占用；收件箱在用户长期不读取关注流后过期淘汰，推送时跳过已淘汰的收件箱，下次读取时从数据库重建
+ */
+@Slf4j
+@Component
+public class BlogFeed {
+
+    private static final int RECOVERY_PAGE_SIZE = 100;
+    private static final int REBUILD_AUTHOR_BATCH_SIZE = 1000;
+    private static final String INBOX_PLACEHOLDER = "0";//收件箱的占位成员，分数为-1
+
+    /**
+     * 归并顺序与 ZREVRANGEBYSCORE 一致：分数降序，分数相同按成员字典序降序
+     */
+    private static final Comparator<ZSetOperations.TypedTuple<String>> FEED_ORDER =
+            Comparator.<ZSetOperations.TypedTuple<String>, Double>comparing(ZSetOperations.TypedTuple::getScore)
+                    .thenComparing(ZSetOperations.TypedTuple::getValue).reversed();
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final FollowMapper followMapper;
+    private final BlogMapper blogMapper;
+    private final FollowGraph followGraph;
+
+    @Value("${hmdp.feed.push-threshold:5000}")
+    private long pushThreshold;//粉丝数达到该值的作者不再推送，由粉丝读取时拉取
+    @Value("${hmdp.feed.push-batch-size:500}")
+    private int pushBatchSize;//每批读取的粉丝数，一批粉丝的收件箱用一次管道写入
+    @Value("${hmdp.feed.workers:2}")
+    private int workers;//每个节点的推送线程数，每个线程对应消费者组中唯一的消费者名
+    @Value("${hmdp.feed.block-ms:2000}")
+    private long blockMillis;//没有任务时XREADGROUP阻塞等待的毫秒数
+    @Value("${hmdp.feed.inbox-max-size:1000}")
+    private long inboxMaxSize;//收件箱保留的最新笔记数
+    @Value("${hmdp.feed.inbox-inactive-days:30}")
+    private long inboxInactiveDays;//用户超过该天数没有读取关注流，收件箱过期淘汰
+    @Value("${hmdp.feed.outbox-max-size:1000}")
+    private long outboxMaxSize;//发件箱保留的最新笔记数
+    @Value("${hmdp.feed.recovery.min-idle-ms:60000}")
+    private long minIdleMillis;//pending任务空闲超过该时长才会被认领重试
+    @Value("${hmdp.feed.recovery.max-deliveries:5}")
+    private long maxDeliveries;//最大投递次数，超过后丢弃任务
+    @Value("${hmdp.feed.recovery.interval-ms:10000}")
+    private long recoveryIntervalMillis;//恢复任务扫描pending-list的间隔
+
+    private ExecutorService pushExecutor;//推送线程池
+    private ScheduledExecutorService recoveryExecutor;//pending-list恢复任务线程
+    private volatile boolean running = true;
+
+    //推送统计
+    private final LongAdder pushedBlogs = new LongAdder();//推送到收件箱的笔记数
+    private final LongAdder pulledOnlyBlogs = new LongAdder();//大V发布、只供拉取的笔记数
+    private final LongAdder pushedInboxes = new LongAdder();//写入的收件箱数
+    private final LongAdder skippedColdInboxes = new LongAdder();//已淘汰、跳过推送的收件箱数
+    private final LongAdder rebuiltInboxes = new LongAdder();//读取时重建的收件箱数
+    private final LongAdder pushFailures = new LongAdder();//失败的任务数
+    private final LongAdder reclaimedJobs = new LongAdder();//从pending-list认领重试的任务数
+    private final LongAdder droppedJobs = new LongAdder();//超过重试上限被丢弃的任务数
+    private final LongAdder jobLatencyTotalMillis = new LongAdder();//任务从发布到完成的延迟总和
+    private final AtomicLong lastJobLatencyMillis = new AtomicLong();
+    private final AtomicLong maxJobLatencyMillis = new AtomicLong();
+    private final AtomicLong lastJobCostMillis = new AtomicLong();//最近一个任务的推送耗时
+
+    public BlogFeed(StringRedisTemplate stringRedisTemplate, FollowMapper followMapper, BlogMapper blogMapper, FollowGraph followGraph) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.followMapper = followMapper;
+        this.blogMapper = blogMapper;
+        this.followGraph = followGraph;
+    }
+
+    /**
+     * 创建推送任务的消费者组，并启动推送线程和恢复任务
+     */
+    @PostConstruct
+    public void init() {
+        createFeedGroupIfAbsent();
+        String namePrefix = consumerNamePrefix();
+        pushExecutor = Executors.newFixedThreadPool(workers);
+        for (int i = 0; i < workers; i++) {
+            pushExecutor.submit(new FeedPushHandler(namePrefix + "-c" + i));
+        }
+        recoveryExecutor = Executors.newSingleThreadScheduledExecutor();
+        recoveryExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                recoverPendingJobs(namePrefix + "-recovery");
+            } catch (Exception e) {
+                log.error("处理pending-list推送任务异常", e);
+            }
+        }, recoveryIntervalMillis, recoveryIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        pushExecutor.shutdown();
+        recoveryExecutor.shutdown();
+    }
+
+    /**
+     * 创建推送任务流的消费者组（XGROUP CREATE stream.feed g1 0 MKSTREAM），已存在时忽略
+     */
+    private void createFeedGroupIfAbsent() {
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands().xGroupCreate(
+                    RedisConstants.STREAM_FEED_KEY.getBytes(StandardCharsets.UTF_8),
+                    RedisConstants.STREAM_FEED_GROUP, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            //BUSYGROUP，消费者组已存在
+            log.debug("推送任务消费者组已存在: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 生成当前节点的消费者名前缀：主机名-进程号
+     */
+    private static String consumerNamePrefix() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "unknown";
+        }
+        return host + "-" + ProcessHandle.current().pid();
+    }
+
+    /**
+     * 发布笔记：一次管道写入作者发件箱并投递推送任务，耗时与粉丝数无关
+     *
+     * @param authorId 作者ID
+     * @param blogId   笔记ID
+     * @param time     发布时间戳（毫秒），作为流中的分数
+     */
+    public void publish(Long authorId, Long blogId, long time) {
+        String outbox = RedisConstants.FEED_OUTBOX_KEY + authorId;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            //1.写入发件箱并裁剪
+            conn.zAdd(outbox, time, blogId.toString());
+            conn.zRemRange(outbox, 0, -outboxMaxSize - 1);
+            //2.投递推送任务 XADD stream.feed * authorId {} blogId {} time {}
+            conn.xAdd(StreamRecords.string(Map.of(
+                    "authorId", authorId.toString(),
+                    "blogId", blogId.toString(),
+                    "time", String.valueOf(time))).withStreamKey(RedisConstants.STREAM_FEED_KEY));
+            return null;
+        });
+    }
+
+    /**
+     * 推送线程：逐个读取推送任务，完成后XACK并XDEL
+     */
+    private class FeedPushHandler implements Runnable {
+
+        private final Consumer consumer;
+
+        FeedPushHandler(String consumerName) {
+            this.consumer = Consumer.from(RedisConstants.STREAM_FEED_GROUP, consumerName);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    //XREADGROUP GROUP g1 {consumer} COUNT 1 BLOCK {blockMs} STREAMS stream.feed >
+                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                            consumer,
+                            StreamReadOptions.empty().count(1).block(Duration.ofMillis(blockMillis)),
+                            StreamOffset.create(RedisConstants.STREAM_FEED_KEY, ReadOffset.lastConsumed())
+                    );
+                    if (list == null || list.isEmpty()) {
+                        continue;
+                    }
+                    handleJob(list.get(0));
+                } catch (Exception e) {
+                    //失败的任务留在pending-list中，由恢复任务在空闲超时后认领重试
+                    pushFailures.increment();
+                    log.error("处理推送任务异常", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 执行一个推送任务：粉丝数达到阈值的作者记为大V由粉丝拉取，否则分批推送到粉丝收件箱
+     */
+    private void handleJob(MapRecord<String, Object, Object> record) {
+        long begin = System.currentTimeMillis();
+        Map<Object, Object> values = record.getValue();
+        Long authorId = Long.valueOf(values.get("authorId").toString());
+        String blogId = values.get("blogId").toString();
+        long time = Long.parseLong(values.get("time").toString());
+        //1.粉丝数达到阈值的作者记为大V，由粉丝拉取
+        Long followers = followMapper.selectCount(new QueryWrapper<Follow>().eq("follow_user_id", authorId));
+        if (followers != null && followers >= pushThreshold) {
+            stringRedisTemplate.opsForSet().add(RedisConstants.FEED_BIG_AUTHORS_KEY, authorId.toString());
+            pulledOnlyBlogs.increment();
+        } else {
+            push(authorId, blogId, time);
+            pushedBlogs.increment();
+        }
+        //2.完成后确认并删除任务，消息流中只保留未完成的任务
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.xAck(RedisConstants.STREAM_FEED_KEY, RedisConstants.STREAM_FEED_GROUP, record.getId());
+            conn.xDel(RedisConstants.STREAM_FEED_KEY, record.getId());
+            return null;
+        });
+        //3.记录统计信息，消息id的时间戳部分即为发布时间
+        long end = System.currentTimeMillis();
+        long latency = end - record.getId().getTimestamp();
+        lastJobCostMillis.set(end - begin);
+        lastJobLatencyMillis.set(latency);
+        maxJobLatencyMillis.accumulateAndGet(latency, Math::max);
+        jobLatencyTotalMillis.add(latency);
+    }
+
+    /**
+     * 按主键游标分批读取粉丝，每批一次管道写入收件箱并裁剪
+     */
+    private void push(Long authorId, String blogId, long time) {
+        long lastId = 0;
+        while (true) {
+            List<Follow> follows = followMapper.selectList(new QueryWrapper<Follow>()
+                    .select("id", "user_id").eq("follow_user_id", authorId).gt("id", lastId)
+                    .orderByAsc("id").last("LIMIT " + pushBatchSize));
+            if (follows.isEmpty()) {
+                return;
+            }
+            lastId = follows.get(follows.size() - 1).getId();
+            //1.管道判断收件箱是否存在，已淘汰的冷收件箱不再写入，等用户下次读取时重建
+            List<Object> exists = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (Follow follow : follows) {
+                    conn.exists(RedisConstants.FEED_KEY + follow.getUserId());
+                }
+                return null;
+            });
+            List<String> inboxes = new ArrayList<>(follows.size());
+            for (int i = 0; i < follows.size(); i++) {
+                if (Boolean.TRUE.equals(exists.get(i))) {
+                    inboxes.add(RedisConstants.FEED_KEY + follows.get(i).getUserId());
+                }
+            }
+            skippedColdInboxes.add(follows.size() - inboxes.size());
+            //2.管道写入存在的收件箱并裁剪
+            if (!inboxes.isEmpty()) {
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    for (String inbox : inboxes) {
+                        conn.zAdd(inbox, time, blogId);
+                        conn.zRemRange(inbox, 0, -inboxMaxSize - 1);
+                    }
+                    return null;
+                });
+                pushedInboxes.add(inboxes.size());
+            }
+            if (follows.size() < pushBatchSize) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 扫描pending-list，认领空闲超时的任务重新推送；推送是幂等的，重复执行不影响结果
+     * 投递次数达到上限的任务丢弃，笔记仍可从作者发件箱中读取
+     *
+     * @param consumerName 恢复任务使用的消费者名
+     */
+    private void recoverPendingJobs(String consumerName) {
+        Range<String> range = Range.unbounded();
+        while (running) {
+            //1.分页查询pending-list XPENDING stream.feed g1 {start} + 100
+            PendingMessages page = stringRedisTemplate.opsForStream()
+                    .pending(RedisConstants.STREAM_FEED_KEY, RedisConstants.STREAM_FEED_GROUP, range, RECOVERY_PAGE_SIZE);
+            if (page == null || page.isEmpty()) {
+                return;
+            }
+            //2.认领空闲超时的任务，XCLAIM并发认领时只有一个节点能成功
+            for (PendingMessage message : page) {
+                if (message.getElapsedTimeSinceLastDelivery().toMillis() < minIdleMillis) {
+                    continue;
+                }
+                List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().claim(
+                        RedisConstants.STREAM_FEED_KEY, RedisConstants.STREAM_FEED_GROUP, consumerName,
+                        Duration.ofMillis(minIdleMillis), message.getId());
+                if (records == null || records.isEmpty()) {
+                    continue;
+                }
+                if (message.getTotalDeliveryCount() >= maxDeliveries) {
+                    stringRedisTemplate.opsForStream().acknowledge(RedisConstants.STREAM_FEED_KEY, RedisConstants.STREAM_FEED_GROUP, message.getId());
+                    stringRedisTemplate.opsForStream().delete(RedisConstants.STREAM_FEED_KEY, message.getId());
+                    droppedJobs.increment();
+                    log.error("推送任务超过重试上限，已丢弃，消息id: {}, 内容: {}", message.getId(), records.get(0).getValue());
+                    continue;
+                }
+                reclaimedJobs.increment();
+                try {
+                    handleJob(records.get(0));
+                } catch (Exception e) {
+                    pushFailures.increment();
+                    log.error("pending推送任务重试失败，消息id: {}", message.getId(), e);
+                }
+            }
+            //3.不足一页说明已扫描到末尾，否则从最后一条消息之后继续
+            if (page.size() < RECOVERY_PAGE_SIZE) {
+                return;
+            }
+            RecordId last = page.get(page.size() - 1).getId();
+            range = Range.rightUnbounded(Range.Bound.inclusive(RecordId.of(last.getTimestamp(), last.getSequence() + 1).getValue()));
+        }
+    }
+
+    /**
+     * 重建被淘汰或从未创建的收件箱：按关注的作者分批查询其最近的笔记，写入收件箱后裁剪并设置过期时间
+     * 收件箱中总会写入一个分数为-1的占位成员，没有关注或关注的人没有笔记时也不会每次读取都重建，读取时分数范围从0开始不会返回它
+     *
+     * @param userId 用户ID
+     */
+    private void rebuildInbox(Long userId) {
+        String inbox = RedisConstants.FEED_KEY + userId;
+        //1.查询关注的作者
+        List<Object> followees = followMapper.selectObjs(new QueryWrapper<Follow>()
+                .select("follow_user_id").eq("user_id", userId));
+        //2.分批查询作者最近的笔记，每批最多取收件箱容量条
+        List<Blog> blogs = new ArrayList<>();
+        for (int from = 0; from < followees.size(); from += REBUILD_AUTHOR_BATCH_SIZE) {
+            List<Object> authorIds = followees.subList(from, Math.min(from + REBUILD_AUTHOR_BATCH_SIZE, followees.size()));
+            blogs.addAll(blogMapper.selectList(new QueryWrapper<Blog>()
+                    .select("id", "create_time").in("user_id", authorIds)
+                    .orderByDesc("id").last("LIMIT " + inboxMaxSize)));
+        }
+        //3.一次管道写入收件箱、裁剪并设置过期时间
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.zAdd(inbox, -1, INBOX_PLACEHOLDER);
+            for (Blog blog : blogs) {
+                long time = blog.getCreateTime() == null ? 0
+                        : blog.getCreateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                conn.zAdd(inbox, time, blog.getId().toString());
+            }
+            conn.zRemRange(inbox, 0, -inboxMaxSize - 1);
+            conn.expire(inbox, TimeUnit.DAYS.toSeconds(inboxInactiveDays));
+            return null;
+        });
+        rebuiltInboxes.increment();
+    }
+
+    /**
+     * 读取一页关注流：收件箱与关注的大V发件箱多路归并
+     * 与单个ZSET的滚动分页语义一致：分数不超过max，跳过前offset条（上一页中分数等于max的笔记）
+     *
+     * @param userId 当前用户ID
+     * @param max    上一页最小的时间戳
+     * @param offset 需要跳过的条数
+     * @param count  每页数量
+     * @return 按时间倒序的笔记ID和时间戳
+     */
+    public List<ZSetOperations.TypedTuple<String>> read(Long userId, long max, int offset, int count) {
+        //1.刷新收件箱的过期时间，收件箱已被淘汰（EXPIRE返回false）时从关注的作者最近的笔记重建
+        String inbox = RedisConstants.FEED_KEY + userId;
+        if (!Boolean.TRUE.equals(stringRedisTemplate.expire(inbox, inboxInactiveDays, TimeUnit.DAYS))) {
+            rebuildInbox(userId);
+        }
+        //2.关注的大V
+        Set<String> bigAuthors = stringRedisTemplate.opsForSet()
+                .intersect(followGraph.ensureLoaded(userId), RedisConstants.FEED_BIG_AUTHORS_KEY);
+        List<String> sources = new ArrayList<>();
+        sources.add(inbox);
+        if (bigAuthors != null) {
+            bigAuthors.forEach(authorId -> sources.add(RedisConstants.FEED_OUTBOX_KEY + authorId));
+        }
+        //3.管道从每个来源各取前offset + count条
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String source : sources) {
+                conn.zRevRangeByScoreWithScores(source, 0, max, 0, offset + count);
+            }
+            return null;
+        });
+        //4.多路归并，同一篇笔记可能同时在收件箱和发件箱中，去重
+        PriorityQueue<Cursor> heap = new PriorityQueue<>((a, b) -> FEED_ORDER.compare(a.head, b.head));
+        for (Object result : results) {
+            @SuppressWarnings("unchecked")
+            Set<ZSetOperations.TypedTuple<String>> tuples = (Set<ZSetOperations.TypedTuple<String>>) result;
+            if (tuples != null && !tuples.isEmpty()) {
+                Iterator<ZSetOperations.TypedTuple<String>> iterator = tuples.iterator();
+                heap.offer(new Cursor(iterator.next(), iterator));
+            }
+        }
+        List<ZSetOperations.TypedTuple<String>> page = new ArrayList<>(count);
+        Set<String> seen = new HashSet<>();
+        int skipped = 0;
+        while (!heap.isEmpty() && page.size() < count) {
+            Cursor cursor = heap.poll();
+            ZSetOperations.TypedTuple<String> head = cursor.head;
+            if (cursor.rest.hasNext()) {
+                heap.offer(new Cursor(cursor.rest.next(), cursor.rest));
+            }
+            if (!seen.add(Objects.requireNonNull(head.getValue()))) {
+                continue;
+            }
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            page.add(head);
+        }
+        return page;
+    }
+
+    private record Cursor(ZSetOperations.TypedTuple<String> head, Iterator<ZSetOperations.TypedTuple<String>> rest) {
+    }
+
+    /**
+     * 查询推送统计：任务数量、延迟和积压
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long jobs = pushedBlogs.sum() + pulledOnlyBlogs.sum();
+        stats.put("pushThreshold", pushThreshold);
+        stats.put("pushedBlogs", pushedBlogs.sum());
+        stats.put("pulledOnlyBlogs", pulledOnlyBlogs.sum());
+        stats.put("pushedInboxes", pushedInboxes.sum());
+        stats.put("skippedColdInboxes", skippedColdInboxes.sum());
+        stats.put("rebuiltInboxes", rebuiltInboxes.sum());
+        stats.put("pushFailures", pushFailures.sum());
+        stats.put("reclaimedJobs", reclaimedJobs.sum());
+        stats.put("droppedJobs", droppedJobs.sum());
+        stats.put("lastJobCostMillis", lastJobCostMillis.get());
+        stats.put("lastJobLatencyMillis", lastJobLatencyMillis.get());
+        stats.put("maxJobLatencyMillis", maxJobLatencyMillis.get());
+        stats.put("avgJobLatencyMillis", jobs == 0 ? 0 : jobLatencyTotalMillis.sum() / jobs);
+        //积压：完成的任务会被XDEL，消息流长度即为未完成的任务数，其中已投递未ACK的为pending
+        PendingMessagesSummary pending = stringRedisTemplate.opsForStream()
+                .pending(RedisConstants.STREAM_FEED_KEY, RedisConstants.STREAM_FEED_GROUP);
+        stats.put("backlog", stringRedisTemplate.opsForStream().size(RedisConstants.STREAM_FEED_KEY));
+        stats.put("pending", pending == null ? 0 : pending.getTotalPendingMessages());
+        stats.put("bigAuthors", stringRedisTemplate.opsForSet().size(RedisConstants.FEED_BIG_AUTHORS_KEY));
+        return stats;
+    }
+}
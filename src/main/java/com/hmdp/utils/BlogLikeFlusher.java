@@ -0,0 +1,238 @@
+package com.hmdp.utils;
+
+import com.hmdp.mapper.BlogMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 点赞数异步写回 - 点赞脚本只修改Redis并在 blog:like:dirty 哈希中累加各博客的点赞数增量
+ * 定时将累加的增量改名为 blog:like:flushing 取出，按批次用一条多行UPDATE写回 tb_blog.liked
+ * 每批写回成功后才从flushing中删除，写回失败或节点宕机时下次继续重试该批次；多节点通过分布式锁保证同一时间只有一个节点写回
+ * 每次取出分配一个批次号，写回时在同一事务中记录 批次号+博客ID（tb_blog_like_flush），重试时跳过已写回的博客，避免UPDATE提交后、HDEL前宕机导致重复累加
+ * 点赞数不会被写成负数；某个博客反复写回失败时移到 blog:like:failed 中，不阻塞其余博客和之后的批次
+ */
+@Slf4j
+@Component
+public class BlogLikeFlusher {
+
+    private static final DefaultRedisScript<Long> TAKE_SCRIPT;
+    static {
+        TAKE_SCRIPT = new DefaultRedisScript<>();
+        TAKE_SCRIPT.setLocation(new ClassPathResource("blog_like_take.lua"));
+        TAKE_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final List<String> TAKE_KEYS = List.of(RedisConstants.BLOG_LIKE_DIRTY_KEY, RedisConstants.BLOG_LIKE_DIRTY_SINCE_KEY,
+            RedisConstants.BLOG_LIKE_FLUSHING_KEY, RedisConstants.BLOG_LIKE_FLUSHING_SINCE_KEY,
+            RedisConstants.BLOG_LIKE_FLUSHING_ID_KEY, RedisConstants.BLOG_LIKE_FLUSH_SEQ_KEY);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedissonClient redissonClient;
+    private final BlogMapper blogMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${hmdp.blog.like.flush-interval-ms:1000}")
+    private long flushIntervalMillis;//写回间隔
+    @Value("${hmdp.blog.like.flush-batch-size:500}")
+    private int flushBatchSize;//一条UPDATE写回的最大博客数量
+
+    private ScheduledExecutorService flushExecutor;
+
+    //写回统计
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushedBlogs = new AtomicLong();
+    private final AtomicLong flushedDelta = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong failedBlogs = new AtomicLong();//移到 blog:like:failed 的博客数量
+    private volatile long lastFlushAt;
+    private volatile long lastFlushLagMillis;//最近一批中最早的点赞到写回完成的时长
+    private final AtomicLong maxFlushLagMillis = new AtomicLong();
+    private volatile String lastError;
+
+    public BlogLikeFlusher(StringRedisTemplate stringRedisTemplate, RedissonClient redissonClient, BlogMapper blogMapper,
+                           TransactionTemplate transactionTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redissonClient = redissonClient;
+        this.blogMapper = blogMapper;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        flushExecutor = Executors.newSingleThreadScheduledExecutor();
+        flushExecutor.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止定时任务后再写回一次，减少停机时未写回的数据
+     */
+    @PreDestroy
+    public void destroy() {
+        flushExecutor.shutdown();
+        try {
+            if (flushExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 执行一次写回，其他节点正在写回时直接返回
+     */
+    public void flush() {
+        RLock lock = redissonClient.getLock(RedisConstants.LOCK_BLOG_LIKE_FLUSH_KEY);
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            //1.取出当前批次，没有待写回的数据时返回
+            Long flushId = stringRedisTemplate.execute(TAKE_SCRIPT, TAKE_KEYS);
+            if (flushId == null || flushId == 0) {
+                return;
+            }
+            Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(RedisConstants.BLOG_LIKE_FLUSHING_KEY);
+            String since = stringRedisTemplate.opsForValue().get(RedisConstants.BLOG_LIKE_FLUSHING_SINCE_KEY);
+            //2.按批次写回，每批成功后从flushing中删除已写回的博客
+            Map<Long, Long> deltas = new LinkedHashMap<>();
+            List<String> fields = new ArrayList<>();
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                String field = entry.getKey().toString();
+                long delta = Long.parseLong(entry.getValue().toString());
+                fields.add(field);
+                if (delta != 0) {
+                    deltas.put(Long.valueOf(field), delta);
+                }
+                if (fields.size() >= flushBatchSize) {
+                    writeBack(flushId, deltas, fields);
+                }
+            }
+            if (!fields.isEmpty()) {
+                writeBack(flushId, deltas, fields);
+            }
+            stringRedisTemplate.delete(List.of(RedisConstants.BLOG_LIKE_FLUSHING_KEY, RedisConstants.BLOG_LIKE_FLUSHING_SINCE_KEY,
+                    RedisConstants.BLOG_LIKE_FLUSHING_ID_KEY));
+            //批次已完成，删除该批次及之前遗留的写回记录
+            blogMapper.deleteFlushedUpTo(flushId);
+            //3.统计写回延迟
+            long now = System.currentTimeMillis();
+            flushes.incrementAndGet();
+            lastFlushAt = now;
+            if (since != null) {
+                lastFlushLagMillis = now - Long.parseLong(since);
+                maxFlushLagMillis.accumulateAndGet(lastFlushLagMillis, Math::max);
+            }
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            lastError = e.getMessage();
+            log.error("点赞数写回数据库失败", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeBack(long flushId, Map<Long, Long> deltas, List<String> fields) {
+        if (!deltas.isEmpty()) {
+            try {
+                applyBatch(flushId, deltas);
+            } catch (TransientDataAccessException | DataAccessResourceFailureException e) {
+                //数据库不可用，保留整个批次，下次重试
+                throw e;
+            } catch (RuntimeException e) {
+                //批次中有写不进去的博客，逐个重试，仍然失败的移到一边
+                log.warn("点赞数批量写回失败，逐个重试，批次：{}", flushId, e);
+                for (Map.Entry<Long, Long> entry : deltas.entrySet()) {
+                    writeBackOne(flushId, entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        stringRedisTemplate.opsForHash().delete(RedisConstants.BLOG_LIKE_FLUSHING_KEY, fields.toArray());
+        deltas.clear();
+        fields.clear();
+    }
+
+    private void writeBackOne(long flushId, Long blogId, Long delta) {
+        Map<Long, Long> one = new HashMap<>(2);
+        one.put(blogId, delta);
+        try {
+            applyBatch(flushId, one);
+        } catch (TransientDataAccessException | DataAccessResourceFailureException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            //保留增量，排查后可手动写回
+            stringRedisTemplate.opsForHash().increment(RedisConstants.BLOG_LIKE_FAILED_KEY, blogId.toString(), delta);
+            failedBlogs.incrementAndGet();
+            lastError = e.getMessage();
+            log.error("博客点赞数写回失败，已移到{}，博客：{}，增量：{}", RedisConstants.BLOG_LIKE_FAILED_KEY, blogId, delta, e);
+        }
+    }
+
+    /**
+     * 在一个事务中写回一批增量：跳过该批次已写回的博客，记录本次写回的博客，再累加点赞数
+     */
+    private void applyBatch(long flushId, Map<Long, Long> deltas) {
+        Map<Long, Long> applied = transactionTemplate.execute(status -> {
+            Map<Long, Long> pending = new LinkedHashMap<>(deltas);
+            blogMapper.selectFlushedBlogIds(flushId, pending.keySet()).forEach(pending::remove);
+            if (!pending.isEmpty()) {
+                blogMapper.insertFlushed(flushId, pending.keySet());
+                blogMapper.incrLikedBatch(pending);
+            }
+            return pending;
+        });
+        if (applied != null) {
+            flushedBlogs.addAndGet(applied.size());
+            applied.values().forEach(delta -> flushedDelta.addAndGet(Math.abs(delta)));
+        }
+    }
+
+    /**
+     * 查询写回统计
+     *
+     * @return 写回次数、博客数量、延迟和当前积压
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        stats.put("flushes", flushes.get());
+        stats.put("flushedBlogs", flushedBlogs.get());
+        stats.put("flushedDelta", flushedDelta.get());
+        stats.put("failures", failures.get());
+        stats.put("failedBlogs", failedBlogs.get());
+        stats.put("lastFlushAt", lastFlushAt);
+        stats.put("lastFlushLagMillis", lastFlushLagMillis);
+        stats.put("maxFlushLagMillis", maxFlushLagMillis.get());
+        //当前积压：未写回的博客数量，以及最早未写回的点赞距今的时长
+        stats.put("pendingBlogs", stringRedisTemplate.opsForHash().size(RedisConstants.BLOG_LIKE_DIRTY_KEY)
+                + stringRedisTemplate.opsForHash().size(RedisConstants.BLOG_LIKE_FLUSHING_KEY));
+        String since = stringRedisTemplate.opsForValue().get(RedisConstants.BLOG_LIKE_FLUSHING_SINCE_KEY);
+        if (since == null) {
+            since = stringRedisTemplate.opsForValue().get(RedisConstants.BLOG_LIKE_DIRTY_SINCE_KEY);
+        }
+        stats.put("currentLagMillis", since == null ? 0 : now - Long.parseLong(since));
+        stats.put("lastError", lastError);
+        return stats;
+    }
+}
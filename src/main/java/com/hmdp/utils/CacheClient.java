@@ -1,27 +1,98 @@
 package com.hmdp.utils;
 
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
-import java.util.Objects;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
+/**
+ * 缓存工具类 - 封装缓存穿透、缓存击穿的处理逻辑
+ * 可选开启进程内一级缓存（Caffeine），Redis作为二级缓存；
+ * 一级缓存按容量和写入时间淘汰，删除缓存时通过发布订阅通知所有节点失效本地副本
+ * Redis中的缓存值格式：[魔数 1字节][编解码器ID 1字节][逻辑过期时间戳毫秒 8字节][编码后的数据]
+ * 判断逻辑过期只读取固定长度的头部，不解码数据；空字节数组表示数据库中不存在的空值
+ */
 @Component
 @Slf4j
 public class CacheClient {
 
+    private static final byte MAGIC = (byte) 0xCA;//非法的UTF-8首字节，用于区分旧的JSON字符串缓存
+    private static final int HEADER_LENGTH = 10;
+    private static final long NO_EXPIRE = Long.MAX_VALUE;
+    private static final byte[] EMPTY = new byte[0];
+
     private final StringRedisTemplate stringRedisTemplate;
+    private final CacheCodec codec;//写入缓存使用的编解码器
+    private final Map<Byte, CacheCodec> codecs = new ConcurrentHashMap<>();//按ID读取缓存的编解码器
+    private final Cache<String, LocalEntry> localCache;//一级缓存，未开启时为null
+
+    //二级缓存（Redis）命中统计，一级缓存的统计由Caffeine记录
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder redisMisses = new LongAdder();
+    private final LongAdder decodeErrors = new LongAdder();//无法解码的缓存值（旧格式或类结构变化），按未命中处理
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    //单飞加载：同一个key正在进行中的加载
+    private static final int MUTEX_RETRY_TIMES = 10;
+    private static final long MUTEX_RETRY_INTERVAL_MILLIS = 50;
+    private final Map<String, CompletableFuture<Object>> inFlightLoads = new ConcurrentHashMap<>();
+    private final LongAdder sharedLoads = new LongAdder();//直接复用他人加载结果的请求数
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate,
+                       RedisMessageListenerContainer container,
+                       @Value("${hmdp.cache.codec:binary}") String codecName,
+                       @Value("${hmdp.cache.local.enabled:false}") boolean localEnabled,
+                       @Value("${hmdp.cache.local.maximum-size:10000}") long localMaximumSize,
+                       @Value("${hmdp.cache.local.expire-seconds:60}") long localExpireSeconds) {
         this.stringRedisTemplate = stringRedisTemplate;
+        for (CacheCodec c : new CacheCodec[]{new BinaryCacheCodec(), new JsonCacheCodec()}) {
+            codecs.put(c.id(), c);
+        }
+        this.codec = "json".equalsIgnoreCase(codecName) ? codecs.get(JsonCacheCodec.ID) : codecs.get(BinaryCacheCodec.ID);
+        if (!localEnabled) {
+            this.localCache = null;
+            return;
+        }
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(Duration.ofSeconds(localExpireSeconds))
+                .recordStats()
+                .build();
+        //订阅缓存失效消息，消息内容为缓存的键名
+        container.addMessageListener((message, pattern) ->
+                        localCache.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(RedisConstants.CACHE_INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 一级缓存中的数据，expireAt为逻辑过期时间戳（毫秒）
+     */
+    private record LocalEntry(Object data, long expireAt) {
     }
 
     /**
@@ -33,7 +104,7 @@ public class CacheClient {
      * @param unit    时间单位
      */
     public void set(String key, Object value, Long timeout, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), timeout, unit);
+        write(key, encode(value, NO_EXPIRE), Expiration.from(timeout, unit));
     }
 
     /**
@@ -45,11 +116,27 @@ public class CacheClient {
      * @param unit    时间单位
      */
     public void setWithLogicalExpire(String key, Object value, Long timeout, TimeUnit unit) {
-        RedisData redisData = new RedisData();
-        redisData.setData(value);
-        //unit.toSeconds()是为了确保计时单位是秒
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(timeout)));
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        write(key, encode(value, System.currentTimeMillis() + unit.toMillis(timeout)), Expiration.persistent());
+    }
+
+    /**
+     * 批量将数据加入缓存，并且设置逻辑过期时间，通过管道一次性写入
+     * 每条数据的逻辑过期时间在timeout基础上随机增加不超过10%，避免批量写入的数据同时过期、同时重建
+     *
+     * @param values  缓存的键名 -> 缓存的数据
+     * @param timeout 逻辑过期时间
+     * @param unit    时间单位
+     */
+    public void setWithLogicalExpireBatch(Map<String, ?> values, Long timeout, TimeUnit unit) {
+        long now = System.currentTimeMillis();
+        long millis = unit.toMillis(timeout);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            values.forEach((key, value) -> {
+                long expireAt = now + millis + ThreadLocalRandom.current().nextLong(millis / 10 + 1);
+                connection.stringCommands().set(key.getBytes(StandardCharsets.UTF_8), encode(value, expireAt));
+            });
+            return null;
+        });
     }
 
     /**
@@ -68,36 +155,51 @@ public class CacheClient {
     public <T, ID> T handCachePenetration(String keyPrefix, ID id, Class<T> type,
                                           Function<ID, T> dbFallback, Long timeout, TimeUnit unit) {
         String key = keyPrefix + id;
+        //0.先查询一级缓存
+        LocalEntry local = getLocal(key);
+        if (local != null) {
+            return type.cast(local.data());
+        }
         //1.从Redis中查询数据
-        String jsonStr = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = read(key);
 
-        T t = null;
         //2.判断缓存是否命中
-        if (StrUtil.isNotBlank(jsonStr)) {
-            //3.缓存命中，将数据转为对象并返回
-            t = JSONUtil.toBean(jsonStr, type);
-            return t;
-        }
-
-        //4.缓存未命中，判断缓存中查询的数据是否为空字符串（isNotBlank()把null和空字串都判断为false，所以排除了）
-        if (Objects.nonNull(jsonStr)) {
-            //5.缓存命中，但数据为空字符串，返回null
-            return null;
+        if (bytes != null && bytes.length > 0) {
+            //3.缓存命中，将数据转为对象，写入一级缓存并返回
+            T t = decode(bytes, type);
+            if (t != null) {
+                redisHits.increment();
+                putLocal(key, t, NO_EXPIRE);
+                return t;
+            }
         }
-        //6.缓存未命中(jsonStr为null)，查询数据库
-        t = dbFallback.apply(id);
+        redisMisses.increment();
 
-        //7.判断查询到的数据是否存在店铺数据
-        if (Objects.isNull(t)) {
-            //7.1数据库未查询到数据，将空字符串写入Redis并返回null
-            stringRedisTemplate.opsForValue().set(key, "", timeout, unit);
+        //4.缓存中是空值，说明数据库中不存在，返回null
+        if (bytes != null && bytes.length == 0) {
             return null;
         }
-
-        //7.2数据库中查询到数据，将数据写入Redis并返回
-        this.set(key, t, timeout, unit);
-        //8.返回查询到的数据
-        return t;
+        //5.缓存未命中，同一个key的并发请求合并为一次加载，跨节点由互斥锁去重
+        T loaded = singleFlight(key, () -> loadWithMutex("lock:" + keyPrefix + id,
+                () -> {
+                    byte[] cached = read(key);
+                    return cached != null && cached.length > 0 ? decode(cached, type) : null;
+                },
+                () -> {
+                    //6.查询数据库
+                    T dbData = dbFallback.apply(id);
+                    if (dbData == null) {
+                        //6.1数据库未查询到数据，将空值写入Redis
+                        write(key, EMPTY, Expiration.from(timeout, unit));
+                        return null;
+                    }
+                    //6.2数据库中查询到数据，将数据写入Redis
+                    this.set(key, dbData, timeout, unit);
+                    return dbData;
+                }));
+        //7.返回查询到的数据
+        putLocal(key, loaded, NO_EXPIRE);
+        return loaded;
     }
 
     /**
@@ -121,42 +223,68 @@ public class CacheClient {
     public <T, ID> T handleCacheBreakdown(String keyPrefix, ID id, Class<T> type,
                                           Function<ID, T> dbFallback, Long timeout, TimeUnit unit) {
         String key = keyPrefix + id;
+        //0.先查询一级缓存，未逻辑过期直接返回；已过期则走Redis，由Redis路径负责重建
+        LocalEntry local = getLocal(key);
+        if (local != null && local.expireAt() > System.currentTimeMillis()) {
+            return type.cast(local.data());
+        }
         //1.从Redis中查询数据
-        String jsonStr = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = read(key);
+        T t = bytes == null ? null : decode(bytes, type);
 
         //2.判断缓存是否命中
-        if (StrUtil.isBlank(jsonStr)) {
-            //3.缓存未命中，查询数据库并设置带逻辑过期的缓存
-            T t = dbFallback.apply(id);
-            if (t == null) {
-                return null;
-            }
-            // 将数据写入Redis并设置逻辑过期时间
-            this.setWithLogicalExpire(key, t, timeout, unit);
-            return t;
+        if (t == null) {
+            redisMisses.increment();
+            //3.缓存未命中，合并并发请求后查询数据库并设置带逻辑过期的缓存
+            T loaded = singleFlight(key, () -> loadWithMutex("lock:" + keyPrefix + id,
+                    () -> {
+                        byte[] cached = read(key);
+                        return cached == null ? null : decode(cached, type);
+                    },
+                    () -> {
+                        T dbData = dbFallback.apply(id);
+                        if (dbData != null) {
+                            // 将数据写入Redis并设置逻辑过期时间
+                            this.setWithLogicalExpire(key, dbData, timeout, unit);
+                        }
+                        return dbData;
+                    }));
+            putLocal(key, loaded, System.currentTimeMillis() + unit.toMillis(timeout));
+            return loaded;
         }
 
-        //4.缓存命中，先将JSON字符串反序列化为对象
-        RedisData redisData = JSONUtil.toBean(jsonStr, RedisData.class);
-        T t = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-        //5.获取逻辑过期时间，判断是否过期
-        if (redisData.getExpireTime().isAfter(LocalDateTime.now())) {
-            //6.未过期，返回数据
+        //4.缓存命中，从头部读取逻辑过期时间，判断是否过期
+        redisHits.increment();
+        long expireAt = expireAt(bytes);
+        if (expireAt > System.currentTimeMillis()) {
+            //5.未过期，写入一级缓存并返回数据
+            putLocal(key, t, expireAt);
             return t;
         }
 
-        //7.已过期，获取互斥锁，并且重建缓存
-        String lockKey = RedisConstants.LOCK_SHOP_KEY + id;
+        //6.已过期，获取互斥锁，并且重建缓存
+        String lockKey = "lock:" + keyPrefix + id;
         boolean isLock = tryLock(lockKey);
-        //8.判断是否获取锁成功
+        //7.判断是否获取锁成功
         if (isLock) {
-            //9.获取锁成功，创建线程，并开始重建缓存
+            //8.获取锁成功，双检缓存头部，其他线程可能刚完成重建
+            byte[] latest = read(key);
+            if (latest != null && expireAt(latest) > System.currentTimeMillis()) {
+                unlock(lockKey);
+                T fresh = decode(latest, type);
+                return fresh != null ? fresh : t;
+            }
+            //9.仍然过期，创建线程，并开始重建缓存
             CACHE_REBUILD_EXECUTOR.submit(() -> {
                 try {
                     //9.1重建缓存
                     T newT = dbFallback.apply(id);
-                    //9.2写入Redis
-                    this.setWithLogicalExpire(key, newT, timeout, unit);
+                    //9.2写入Redis，数据已被删除时删除缓存
+                    if (newT == null) {
+                        this.delete(key);
+                    } else {
+                        this.setWithLogicalExpire(key, newT, timeout, unit);
+                    }
                 } catch (Exception e) {
                     throw new RuntimeException(e);
                 } finally {
@@ -166,31 +294,291 @@ public class CacheClient {
             });
         }
 
-        //10.获取锁失败，再次查询缓存并重建缓存（双检操作）
-        jsonStr = stringRedisTemplate.opsForValue().get(key);
-        if (StrUtil.isBlank(jsonStr)) {
-            //11.缓存未命中，返回null
-            return null;
+        //10.返回过期数据，由后台线程完成重建
+        return t;
+    }
+
+
+    /**
+     * 批量缓存击穿处理(根据id列表查询数据)，一次MGET读取所有缓存
+     * 未命中的数据合并为一次数据库查询并管道写回；已逻辑过期的数据先返回旧值，获取到锁的由后台线程批量重建
+     *
+     * @param keyPrefix  缓存的键名前缀
+     * @param ids        查询的id列表
+     * @param type       查询的数据类型
+     * @param idGetter   从数据中获取id
+     * @param dbFallback 批量查询数据库的回调函数
+     * @param timeout    逻辑过期时间
+     * @param unit       时间单位
+     * @param <T>        查询的数据类型
+     * @param <ID>       查询的id的类型
+     * @return id -> 数据，不存在的id不包含在结果中
+     */
+    public <T, ID> Map<ID, T> handleCacheBreakdownBatch(String keyPrefix, List<ID> ids, Class<T> type, Function<T, ID> idGetter,
+                                                        Function<List<ID>, List<T>> dbFallback, Long timeout, TimeUnit unit) {
+        Map<ID, T> result = new HashMap<>(ids.size() * 2);
+        long now = System.currentTimeMillis();
+        //1.先查询一级缓存
+        List<ID> remoteIds = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            LocalEntry local = getLocal(keyPrefix + id);
+            if (local != null && local.expireAt() > now) {
+                result.put(id, type.cast(local.data()));
+            } else {
+                remoteIds.add(id);
+            }
+        }
+        if (remoteIds.isEmpty()) {
+            return result;
+        }
+        //2.一次MGET查询Redis
+        byte[][] rawKeys = new byte[remoteIds.size()][];
+        for (int i = 0; i < rawKeys.length; i++) {
+            rawKeys[i] = (keyPrefix + remoteIds.get(i)).getBytes(StandardCharsets.UTF_8);
+        }
+        List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.stringCommands().mGet(rawKeys));
+        List<ID> missingIds = new ArrayList<>();
+        List<ID> expiredIds = new ArrayList<>();
+        for (int i = 0; i < remoteIds.size(); i++) {
+            ID id = remoteIds.get(i);
+            byte[] bytes = values == null ? null : values.get(i);
+            T t = bytes == null ? null : decode(bytes, type);
+            if (t == null) {
+                missingIds.add(id);
+                continue;
+            }
+            long expireAt = expireAt(bytes);
+            result.put(id, t);
+            if (expireAt > now) {
+                putLocal(keyPrefix + id, t, expireAt);
+            } else {
+                expiredIds.add(id);
+            }
+        }
+        redisHits.add(remoteIds.size() - missingIds.size());
+        redisMisses.add(missingIds.size());
+        //3.未命中的数据合并为一次数据库查询，管道写回Redis
+        if (!missingIds.isEmpty()) {
+            Map<String, T> loaded = new LinkedHashMap<>();
+            for (T t : dbFallback.apply(missingIds)) {
+                result.put(idGetter.apply(t), t);
+                loaded.put(keyPrefix + idGetter.apply(t), t);
+            }
+            if (!loaded.isEmpty()) {
+                setWithLogicalExpireBatch(loaded, timeout, unit);
+            }
+        }
+        //4.已过期的数据，获取到锁的由后台线程批量重建，本次返回旧值
+        List<ID> lockedIds = new ArrayList<>();
+        for (ID id : expiredIds) {
+            if (tryLock("lock:" + keyPrefix + id)) {
+                lockedIds.add(id);
+            }
+        }
+        if (!lockedIds.isEmpty()) {
+            CACHE_REBUILD_EXECUTOR.submit(() -> {
+                try {
+                    Map<String, T> rebuilt = new LinkedHashMap<>();
+                    for (T t : dbFallback.apply(lockedIds)) {
+                        rebuilt.put(keyPrefix + idGetter.apply(t), t);
+                    }
+                    setWithLogicalExpireBatch(rebuilt, timeout, unit);
+                } finally {
+                    lockedIds.forEach(id -> unlock("lock:" + keyPrefix + id));
+                }
+            });
         }
-        //12.缓存命中，先将JSON字符串反序列化为对象
-        redisData = JSONUtil.toBean(jsonStr, RedisData.class);
-        t = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-        //13.判断逻辑过期时间，判断是否过期
-        if (redisData.getExpireTime().isAfter(LocalDateTime.now())) {
-            //14.未过期，返回数据
+        return result;
+    }
+
+    /**
+     * 删除缓存，并通知所有节点失效一级缓存中的副本
+     *
+     * @param key 缓存的键名
+     */
+    public void delete(String key) {
+        stringRedisTemplate.delete(key);
+        if (localCache != null) {
+            localCache.invalidate(key);
+            stringRedisTemplate.convertAndSend(RedisConstants.CACHE_INVALIDATE_CHANNEL, key);
+        }
+    }
+
+    /**
+     * 查询各级缓存的命中统计
+     *
+     * @return 一级缓存和Redis的命中次数、未命中次数和命中率
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("singleFlightShared", sharedLoads.sum());
+        if (localCache != null) {
+            CacheStats local = localCache.stats();
+            stats.put("localHits", local.hitCount());
+            stats.put("localMisses", local.missCount());
+            stats.put("localHitRate", local.hitRate());
+            stats.put("localEvictions", local.evictionCount());
+            stats.put("localSize", localCache.estimatedSize());
+        }
+        long hits = redisHits.sum();
+        long misses = redisMisses.sum();
+        stats.put("redisHits", hits);
+        stats.put("redisMisses", misses);
+        stats.put("redisHitRate", hits + misses == 0 ? 1.0 : (double) hits / (hits + misses));
+        stats.put("codec", codec.getClass().getSimpleName());
+        stats.put("decodeErrors", decodeErrors.sum());
+        return stats;
+    }
+
+    /**
+     * 单飞加载：同一个key的并发未命中在本JVM内共享同一次加载
+     *
+     * @param key    缓存的键名
+     * @param loader 实际的加载逻辑
+     * @param <T>    数据类型
+     * @return 加载结果
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T singleFlight(String key, Supplier<T> loader) {
+        CompletableFuture<Object> created = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlightLoads.putIfAbsent(key, created);
+        if (existing != null) {
+            //已有线程在加载，等待其结果
+            sharedLoads.increment();
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : e;
+            }
+        }
+        try {
+            T t = loader.get();
+            created.complete(t);
             return t;
+        } catch (RuntimeException e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLoads.remove(key, created);
         }
+    }
 
-        //15.已过期，返回过期数据
-        return t;
+    /**
+     * 基于Redis互斥锁加载数据，保证多个节点同时未命中时只有一个节点查询数据库
+     * 未获取到锁的节点轮询缓存，等待超时后直接查询数据库
+     *
+     * @param lockKey     锁的键名
+     * @param cacheReader 读取缓存，未命中返回null
+     * @param dbLoader    查询数据库并写入缓存
+     * @param <T>         数据类型
+     * @return 加载结果
+     */
+    private <T> T loadWithMutex(String lockKey, Supplier<T> cacheReader, Supplier<T> dbLoader) {
+        for (int i = 0; i < MUTEX_RETRY_TIMES; i++) {
+            if (tryLock(lockKey)) {
+                try {
+                    //获取锁成功，双检缓存，等待期间其他节点可能已经完成重建
+                    T cached = cacheReader.get();
+                    return cached != null ? cached : dbLoader.get();
+                } finally {
+                    unlock(lockKey);
+                }
+            }
+            //获取锁失败，稍后重新查询缓存
+            try {
+                Thread.sleep(MUTEX_RETRY_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            T cached = cacheReader.get();
+            if (cached != null) {
+                return cached;
+            }
+        }
+        return dbLoader.get();
     }
 
+    /**
+     * 编码缓存值：写入固定长度的头部，再写入编码后的数据
+     *
+     * @param value    缓存的数据
+     * @param expireAt 逻辑过期时间戳（毫秒），不使用逻辑过期时为Long.MAX_VALUE
+     * @return 缓存值
+     */
+    private byte[] encode(Object value, long expireAt) {
+        byte[] payload = codec.encode(value);
+        byte[] bytes = new byte[HEADER_LENGTH + payload.length];
+        bytes[0] = MAGIC;
+        bytes[1] = codec.id();
+        for (int i = 0; i < 8; i++) {
+            bytes[2 + i] = (byte) (expireAt >>> (56 - 8 * i));
+        }
+        System.arraycopy(payload, 0, bytes, HEADER_LENGTH, payload.length);
+        return bytes;
+    }
 
     /**
-     * 释放锁
+     * 只读取头部中的逻辑过期时间，不解码数据
+     *
+     * @param bytes 缓存值
+     * @return 逻辑过期时间戳（毫秒），头部无效时返回0
+     */
+    private static long expireAt(byte[] bytes) {
+        if (bytes.length < HEADER_LENGTH || bytes[0] != MAGIC) {
+            return 0;
+        }
+        long expireAt = 0;
+        for (int i = 2; i < HEADER_LENGTH; i++) {
+            expireAt = (expireAt << 8) | (bytes[i] & 0xFF);
+        }
+        return expireAt;
+    }
+
+    /**
+     * 按头部中的编解码器ID解码数据，头部无效或解码失败时返回null，由调用方按未命中处理
+     */
+    private <T> T decode(byte[] bytes, Class<T> type) {
+        CacheCodec c = bytes.length >= HEADER_LENGTH && bytes[0] == MAGIC ? codecs.get(bytes[1]) : null;
+        if (c == null) {
+            decodeErrors.increment();
+            return null;
+        }
+        try {
+            return c.decode(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH, type);
+        } catch (RuntimeException e) {
+            decodeErrors.increment();
+            log.warn("缓存数据解码失败，按未命中处理: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private byte[] read(String key) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey));
+    }
+
+    private void write(String key, byte[] value, Expiration expiration) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.execute((RedisCallback<Object>) connection ->
+                connection.stringCommands().set(rawKey, value, expiration, RedisStringCommands.SetOption.upsert()));
+    }
+
+    private LocalEntry getLocal(String key) {
+        return localCache == null ? null : localCache.getIfPresent(key);
+    }
+
+    private void putLocal(String key, Object data, long expireAt) {
+        if (localCache != null && data != null) {
+            localCache.put(key, new LocalEntry(data, expireAt));
+        }
+    }
+
+    /**
+     * 获取锁
      *
      * @param key 锁的键名
-     * @return 是否释放成功
+     * @return 是否获取成功
      */
     private boolean tryLock(String key) {
         return Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(key, "1", RedisConstants.LOCK_SHOP_TTL, TimeUnit.SECONDS));//当flag为null时，说明没有获取锁，返回false
@@ -0,0 +1,33 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存编解码器 - 负责缓存数据与字节之间的转换
+ * 逻辑过期时间不属于编码内容，由CacheClient写在固定长度的头部中，判断是否过期时不需要解码数据
+ */
+public interface CacheCodec {
+
+    /**
+     * 编解码器ID，写入缓存头部，读取时按ID选择编解码器，切换编码方式后旧数据仍可读取
+     */
+    byte id();
+
+    /**
+     * 将对象编码为字节
+     *
+     * @param value 缓存的数据
+     * @return 编码后的字节
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 将字节解码为对象
+     *
+     * @param bytes  缓存的字节
+     * @param offset 数据的起始位置
+     * @param length 数据的长度
+     * @param type   数据类型
+     * @param <T>    数据类型
+     * @return 解码后的对象
+     */
+    <T> T decode(byte[] bytes, int offset, int length, Class<T> type);
+}
@@ -0,0 +1,283 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.VoucherMapper;
+import com.hmdp.mapper.VoucherOrderMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 缓存预热 - 启动后及定时将热点数据写入Redis，避免发布或Redis故障切换后的流量直接打到MySQL
+ * 1.商铺：按主键游标分页读取tb_shop，管道批量写入带逻辑过期的 cache:shop:{id}
+ * 2.店铺优惠券列表：每页商铺一次查询其优惠券，管道批量写入 voucher:shop:{shopId}
+ * 3.秒杀库存：开始时间在预热窗口内且未结束的秒杀券，库存key不存在时从数据库加载，已存在的不覆盖；
+ *   库存key丢失期间请求可能已将券标记为售罄，加载后清除各节点的本地售罄标记
+ */
+@Slf4j
+@Component
+public class CacheWarmer {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final CacheClient cacheClient;
+    private final SeckillStockBuckets stockBuckets;
+    private final SeckillSoldOutGate soldOutGate;
+    private final ShopMapper shopMapper;
+    private final VoucherMapper voucherMapper;
+    private final SeckillVoucherMapper seckillVoucherMapper;
+    private final VoucherOrderMapper voucherOrderMapper;
+
+    @Value("${hmdp.warmup.enabled:true}")
+    private boolean enabled;
+    @Value("${hmdp.warmup.page-size:500}")
+    private int pageSize;//每页读取的行数
+    @Value("${hmdp.warmup.seckill-window-hours:24}")
+    private long seckillWindowHours;//开始时间在该时长内的秒杀券会预加载库存
+    @Value("${hmdp.warmup.interval-minutes:0}")
+    private long intervalMinutes;//定时预热间隔，0表示只在启动时预热
+
+    private ScheduledExecutorService warmupExecutor;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    //进度统计
+    private volatile String phase = "idle";
+    private final AtomicLong shopsWarmed = new AtomicLong();
+    private final AtomicLong shopVoucherListsWarmed = new AtomicLong();
+    private final AtomicLong stocksLoaded = new AtomicLong();
+    private final AtomicLong stocksSkipped = new AtomicLong();
+    private volatile long startedAt;
+    private volatile long lastCostMillis;
+    private volatile String lastError;
+
+    public CacheWarmer(StringRedisTemplate stringRedisTemplate, CacheClient cacheClient, SeckillStockBuckets stockBuckets,
+                       SeckillSoldOutGate soldOutGate, ShopMapper shopMapper, VoucherMapper voucherMapper,
+                       SeckillVoucherMapper seckillVoucherMapper, VoucherOrderMapper voucherOrderMapper) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheClient = cacheClient;
+        this.stockBuckets = stockBuckets;
+        this.soldOutGate = soldOutGate;
+        this.shopMapper = shopMapper;
+        this.voucherMapper = voucherMapper;
+        this.seckillVoucherMapper = seckillVoucherMapper;
+        this.voucherOrderMapper = voucherOrderMapper;
+    }
+
+    /**
+     * 启动后在后台线程中预热，不阻塞应用启动；配置了间隔时定时重复执行
+     */
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        warmupExecutor = Executors.newSingleThreadScheduledExecutor();
+        if (intervalMinutes > 0) {
+            warmupExecutor.scheduleWithFixedDelay(this::warmUp, 0, intervalMinutes, TimeUnit.MINUTES);
+        } else {
+            warmupExecutor.execute(this::warmUp);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (warmupExecutor != null) {
+            warmupExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 手动触发一次预热，已有预热在执行时直接返回
+     *
+     * @return 是否触发成功
+     */
+    public boolean trigger() {
+        if (warmupExecutor == null || running.get()) {
+            return false;
+        }
+        warmupExecutor.execute(this::warmUp);
+        return true;
+    }
+
+    /**
+     * 执行一次完整的预热
+     */
+    public void warmUp() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        shopsWarmed.set(0);
+        shopVoucherListsWarmed.set(0);
+        stocksLoaded.set(0);
+        stocksSkipped.set(0);
+        lastError = null;
+        startedAt = System.currentTimeMillis();
+        try {
+            phase = "shop";
+            warmUpShops();
+            phase = "seckill-stock";
+            warmUpSeckillStock();
+            log.info("缓存预热完成，商铺: {}，店铺优惠券列表: {}，秒杀库存: {}，耗时: {}ms",
+                    shopsWarmed.get(), shopVoucherListsWarmed.get(), stocksLoaded.get(), System.currentTimeMillis() - startedAt);
+        } catch (Exception e) {
+            lastError = e.getMessage();
+            log.error("缓存预热失败，阶段: {}", phase, e);
+        } finally {
+            lastCostMillis = System.currentTimeMillis() - startedAt;
+            phase = "idle";
+            running.set(false);
+        }
+    }
+
+    /**
+     * 按主键游标分页预热商铺及其优惠券列表
+     */
+    private void warmUpShops() {
+        long lastId = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            //1.按主键游标读取一页商铺
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .gt("id", lastId).orderByAsc("id").last("LIMIT " + pageSize));
+            if (shops.isEmpty()) {
+                return;
+            }
+            lastId = shops.get(shops.size() - 1).getId();
+            //2.管道写入商铺缓存
+            Map<String, Shop> shopCaches = new LinkedHashMap<>(shops.size() * 2);
+            for (Shop shop : shops) {
+                shopCaches.put(RedisConstants.CACHE_SHOP_KEY + shop.getId(), shop);
+            }
+            cacheClient.setWithLogicalExpireBatch(shopCaches, RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            shopsWarmed.addAndGet(shops.size());
+            //3.一次查询本页商铺的优惠券，按店铺分组后管道写入
+            List<Long> shopIds = shops.stream().map(Shop::getId).collect(Collectors.toList());
+            Map<Long, List<Voucher>> vouchersOfShop = voucherMapper.queryVoucherOfShops(shopIds).stream()
+                    .collect(Collectors.groupingBy(Voucher::getShopId));
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                vouchersOfShop.forEach((shopId, vouchers) -> conn.setEx(RedisConstants.VOUCHER_OF_SHOP_KEY + shopId,
+                        TimeUnit.MINUTES.toSeconds(RedisConstants.CACHE_SHOP_TTL), JSONUtil.toJsonStr(vouchers)));
+                return null;
+            });
+            shopVoucherListsWarmed.addAndGet(vouchersOfShop.size());
+            if (shops.size() < pageSize) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 预加载即将开始或进行中的秒杀券库存，库存key已存在说明Redis中的数据仍然有效，不覆盖
+     * 库存key丢失时同时从订单表恢复已下单用户，保证一人一单
+     */
+    private void warmUpSeckillStock() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime windowEnd = now.plusHours(seckillWindowHours);
+        long lastId = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            //1.按主键游标读取一页秒杀券
+            List<SeckillVoucher> vouchers = seckillVoucherMapper.selectList(new QueryWrapper<SeckillVoucher>()
+                    .gt("voucher_id", lastId).le("begin_time", windowEnd).gt("end_time", now)
+                    .orderByAsc("voucher_id").last("LIMIT " + pageSize));
+            if (vouchers.isEmpty()) {
+                return;
+            }
+            lastId = vouchers.get(vouchers.size() - 1).getVoucherId();
+            //2.管道判断库存key是否存在，分桶的券判断第一个桶
+            List<Object> exists = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (SeckillVoucher voucher : vouchers) {
+                    conn.exists(stockKeyOf(voucher.getVoucherId()));
+                }
+                return null;
+            });
+            //3.加载缺失的库存
+            for (int i = 0; i < vouchers.size(); i++) {
+                if (Boolean.TRUE.equals(exists.get(i))) {
+                    stocksSkipped.incrementAndGet();
+                    continue;
+                }
+                loadStock(vouchers.get(i));
+                //清除各节点的本地售罄标记，与同步库存接口一致
+                soldOutGate.clear(vouchers.get(i).getVoucherId());
+                stocksLoaded.incrementAndGet();
+            }
+            if (vouchers.size() < pageSize) {
+                return;
+            }
+        }
+    }
+
+    private String stockKeyOf(Long voucherId) {
+        int bucketCount = stockBuckets.bucketCount(voucherId);
+        return bucketCount > 1 ? SeckillStockBuckets.stockKey(voucherId, 0) : RedisConstants.SECKILL_STOCK_KEY + voucherId;
+    }
+
+    /**
+     * 从数据库加载一张券的库存和已下单用户
+     */
+    private void loadStock(SeckillVoucher voucher) {
+        Long voucherId = voucher.getVoucherId();
+        int bucketCount = stockBuckets.bucketCount(voucherId);
+        List<Object> userIds = voucherOrderMapper.selectObjs(new QueryWrapper<VoucherOrder>()
+                .select("user_id").eq("voucher_id", voucherId));
+        if (bucketCount > 1) {
+            stockBuckets.initStock(voucherId, voucher.getStock(), bucketCount);
+        } else {
+            stringRedisTemplate.opsForValue().setIfAbsent(RedisConstants.SECKILL_STOCK_KEY + voucherId, voucher.getStock().toString());
+        }
+        if (userIds.isEmpty()) {
+            return;
+        }
+        //已下单用户写入对应的订单key，分桶的券写入用户所属的桶
+        Map<String, List<String>> orderKeys = new LinkedHashMap<>();
+        for (Object userId : userIds) {
+            Long uid = ((Number) userId).longValue();
+            String orderKey = bucketCount > 1
+                    ? SeckillStockBuckets.orderKey(voucherId, stockBuckets.homeBucket(uid, bucketCount))
+                    : RedisConstants.SECKILL_ORDER_KEY + voucherId;
+            orderKeys.computeIfAbsent(orderKey, k -> new ArrayList<>()).add(uid.toString());
+        }
+        orderKeys.forEach((key, members) -> stringRedisTemplate.opsForSet().add(key, members.toArray(new String[0])));
+    }
+
+    /**
+     * 查询预热进度
+     */
+    public Map<String, Object> progress() {
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("enabled", enabled);
+        progress.put("running", running.get());
+        progress.put("phase", phase);
+        progress.put("shopsWarmed", shopsWarmed.get());
+        progress.put("shopVoucherListsWarmed", shopVoucherListsWarmed.get());
+        progress.put("stocksLoaded", stocksLoaded.get());
+        progress.put("stocksSkipped", stocksSkipped.get());
+        progress.put("elapsedMillis", running.get() ? System.currentTimeMillis() - startedAt : lastCostMillis);
+        progress.put("lastError", lastError);
+        return progress;
+    }
+}
@@ -0,0 +1,435 @@
+package com.hmdp.utils;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * 压缩位图（Roaring结构）实现的ID集合，元素为无符号32位整数
+ * 按高16位分桶，每个桶是一个容器：元素不超过4096个时为有序char数组，超过后转为8KB的位图
+ * 稀疏的ID只占用约2字节/个，稠密的ID约1比特/个；求交集时数组与数组归并、数组逐个探测位图、位图与位图按字与运算
+ * 非线程安全，由调用方加锁
+ */
+public class CompressedIdSet {
+
+    private static final int ARRAY_MAX_SIZE = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    private char[] keys = new char[4];//各容器的高16位，升序
+    private Container[] containers = new Container[4];
+    private int size;//容器数量
+
+    /**
+     * @param id 无符号32位整数
+     * @return 集合是否被修改
+     */
+    public boolean add(int id) {
+        char high = (char) (id >>> 16);
+        int i = indexOf(high);
+        if (i < 0) {
+            i = -i - 1;
+            insertAt(i, high, new ArrayContainer());
+        }
+        Container container = containers[i];
+        int before = container.cardinality();
+        containers[i] = container.add((char) id);
+        return containers[i].cardinality() != before;
+    }
+
+    /**
+     * @param id 无符号32位整数
+     * @return 集合是否被修改
+     */
+    public boolean remove(int id) {
+        int i = indexOf((char) (id >>> 16));
+        if (i < 0) {
+            return false;
+        }
+        Container container = containers[i];
+        int before = container.cardinality();
+        containers[i] = container.remove((char) id);
+        if (containers[i].cardinality() == 0) {
+            removeAt(i);
+            return true;
+        }
+        return containers[i].cardinality() != before;
+    }
+
+    public boolean contains(int id) {
+        int i = indexOf((char) (id >>> 16));
+        return i >= 0 && containers[i].contains((char) id);
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * 求交集，两个集合都不修改
+     */
+    public CompressedIdSet and(CompressedIdSet other) {
+        CompressedIdSet result = new CompressedIdSet();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.insertAt(result.size, keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 交集的元素数量，不生成交集
+     */
+    public int andCardinality(CompressedIdSet other) {
+        int cardinality = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                cardinality += containers[i].andCardinality(other.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return cardinality;
+    }
+
+    /**
+     * 按升序遍历元素
+     */
+    public void forEach(IntConsumer consumer) {
+        forEachWhile(id -> {
+            consumer.accept(id);
+            return true;
+        });
+    }
+
+    /**
+     * 按升序遍历元素，predicate返回false时停止遍历
+     *
+     * @return 是否遍历了全部元素
+     */
+    public boolean forEachWhile(IntPredicate predicate) {
+        for (int i = 0; i < size; i++) {
+            if (!containers[i].forEachWhile(keys[i] << 16, predicate)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 估算占用的堆内存（字节）
+     */
+    public long sizeInBytes() {
+        long bytes = 16 + 16 + keys.length * 2L + 16 + containers.length * 4L;
+        for (int i = 0; i < size; i++) {
+            bytes += containers[i].sizeInBytes();
+        }
+        return bytes;
+    }
+
+    private int indexOf(char high) {
+        return Arrays.binarySearch(keys, 0, size, high);
+    }
+
+    private void insertAt(int i, char high, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size << 1);
+            containers = Arrays.copyOf(containers, size << 1);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = high;
+        containers[i] = container;
+        size++;
+    }
+
+    private void removeAt(int i) {
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+        containers[--size] = null;
+    }
+
+    /**
+     * 一个桶中的低16位元素，修改后可能转换类型，调用方使用返回的容器
+     */
+    private abstract static class Container {
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        abstract boolean contains(char value);
+
+        abstract int cardinality();
+
+        abstract Container and(Container other);
+
+        abstract int andCardinality(Container other);
+
+        abstract boolean forEachWhile(int high, IntPredicate predicate);
+
+        abstract long sizeInBytes();
+    }
+
+    /**
+     * 稀疏容器：有序char数组
+     */
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_MAX_SIZE) {
+                return toBitmap().add(value);
+            }
+            i = -i - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.max(4, Math.min(cardinality << 1, ARRAY_MAX_SIZE)));
+            }
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if (i >= 0) {
+                System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[Math.min(cardinality, other.cardinality())];
+            int n = 0;
+            if (other instanceof ArrayContainer array) {
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        result[n++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        result[n++] = values[i];
+                    }
+                }
+            }
+            return new ArrayContainer(result, n);
+        }
+
+        @Override
+        int andCardinality(Container other) {
+            int n = 0;
+            if (other instanceof ArrayContainer array) {
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        n++;
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        n++;
+                    }
+                }
+            }
+            return n;
+        }
+
+        @Override
+        boolean forEachWhile(int high, IntPredicate predicate) {
+            for (int i = 0; i < cardinality; i++) {
+                if (!predicate.test(high | values[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 16 + 4 + 16 + values.length * 2L;
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    /**
+     * 稠密容器：65536位的位图
+     */
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer() {
+            this(new long[BITMAP_WORDS], 0);
+        }
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            long before = words[value >>> 6];
+            words[value >>> 6] = before | (1L << value);
+            if (before != words[value >>> 6]) {
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            long before = words[value >>> 6];
+            words[value >>> 6] = before & ~(1L << value);
+            if (before != words[value >>> 6]) {
+                cardinality--;
+            }
+            return cardinality <= ARRAY_MAX_SIZE ? toArray() : this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            long[] result = new long[BITMAP_WORDS];
+            int n = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result[i] = words[i] & otherWords[i];
+                n += Long.bitCount(result[i]);
+            }
+            BitmapContainer bitmap = new BitmapContainer(result, n);
+            return n <= ARRAY_MAX_SIZE ? bitmap.toArray() : bitmap;
+        }
+
+        @Override
+        int andCardinality(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.andCardinality(this);
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            int n = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                n += Long.bitCount(words[i] & otherWords[i]);
+            }
+            return n;
+        }
+
+        @Override
+        boolean forEachWhile(int high, IntPredicate predicate) {
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    if (!predicate.test(high | (i << 6) | Long.numberOfTrailingZeros(word))) {
+                        return false;
+                    }
+                    word &= word - 1;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 16 + 4 + 16 + BITMAP_WORDS * 8L;
+        }
+
+        private ArrayContainer toArray() {
+            char[] values = new char[Math.max(cardinality, 1)];
+            int n = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[n++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values, n);
+        }
+    }
+}
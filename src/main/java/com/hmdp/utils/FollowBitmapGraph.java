@@ -0,0 +1,346 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Follow;
+import com.hmdp.mapper.FollowMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 进程内的关注关系图 - 每个用户的关注列表和粉丝列表各保存为一个压缩位图（CompressedIdSet）
+ * 共同关注为两个位图求交集，关注数、粉丝数为位图的元素数量，好友推荐为关注的人的关注列表计数，都不访问网络
+ * 启动时按主键游标从tb_follow流式构建；关注、取消关注后更新本节点并通过发布订阅通知其他节点，消息内容为 userId:followUserId:1|0
+ * 重建期间收到的关注变更同时记录下来，新关系图替换旧关系图时按顺序重放，不会被扫描前的数据覆盖
+ * 用户ID按无符号32位整数保存，超出范围的关注关系不进入关系图
+ */
+@Slf4j
+@Component
+public class FollowBitmapGraph implements MessageListener {
+
+    private static final int LOAD_PAGE_SIZE = 5000;
+    private static final long MAX_ID = 0xFFFFFFFFL;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final FollowMapper followMapper;
+    private final boolean enabled;
+
+    @Value("${hmdp.follow.bitmap-graph.suggest-scan-limit:500}")
+    private int suggestScanLimit;//好友推荐最多扫描的关注数
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Integer, CompressedIdSet> following = new HashMap<>();//用户ID -> 关注的人
+    private Map<Integer, CompressedIdSet> followers = new HashMap<>();//用户ID -> 粉丝
+    private List<Update> rebuildUpdates;//重建期间收到的关注变更，未在重建时为null，由写锁保护
+
+    private record Update(int user, int followUser, boolean isFollow) {
+    }
+
+    public FollowBitmapGraph(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer container, FollowMapper followMapper,
+                             @Value("${hmdp.follow.bitmap-graph.enabled:false}") boolean enabled) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.followMapper = followMapper;
+        this.enabled = enabled;
+        if (enabled) {
+            container.addMessageListener(this, new ChannelTopic(RedisConstants.FOLLOW_GRAPH_CHANNEL));
+        }
+    }
+
+    /**
+     * 好友推荐：推荐的用户ID，以及当前用户关注的人中有多少人关注了他
+     */
+    public record Suggestion(long userId, int mutual) {
+    }
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 从数据库全量重建关系图，构建完成后整体替换
+     *
+     * @return 关注关系数量
+     */
+    public synchronized long rebuild() {
+        long begin = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            rebuildUpdates = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Map<Integer, CompressedIdSet> newFollowing = new HashMap<>();
+        Map<Integer, CompressedIdSet> newFollowers = new HashMap<>();
+        long edges;
+        try {
+            edges = load(newFollowing, newFollowers);
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                rebuildUpdates = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        lock.writeLock().lock();
+        try {
+            //重放扫描期间的变更，add/remove按到达顺序执行，结果与最后一次变更一致
+            for (Update update : rebuildUpdates) {
+                applyTo(newFollowing, newFollowers, update);
+            }
+            following = newFollowing;
+            followers = newFollowers;
+        } finally {
+            rebuildUpdates = null;
+            lock.writeLock().unlock();
+        }
+        log.info("关注关系图构建完成，关注关系数量: {}，耗时: {}ms", edges, System.currentTimeMillis() - begin);
+        return edges;
+    }
+
+    /**
+     * 按主键游标流式读取tb_follow，构建关注和粉丝位图
+     *
+     * @return 关注关系数量
+     */
+    private long load(Map<Integer, CompressedIdSet> newFollowing, Map<Integer, CompressedIdSet> newFollowers) {
+        long edges = 0;
+        long lastId = 0;
+        while (true) {
+            List<Follow> follows = followMapper.selectList(new QueryWrapper<Follow>()
+                    .select("id", "user_id", "follow_user_id").gt("id", lastId)
+                    .orderByAsc("id").last("LIMIT " + LOAD_PAGE_SIZE));
+            for (Follow follow : follows) {
+                lastId = follow.getId();
+                if (inRange(follow.getUserId()) && inRange(follow.getFollowUserId())) {
+                    int user = follow.getUserId().intValue();
+                    int followUser = follow.getFollowUserId().intValue();
+                    newFollowing.computeIfAbsent(user, k -> new CompressedIdSet()).add(followUser);
+                    newFollowers.computeIfAbsent(followUser, k -> new CompressedIdSet()).add(user);
+                    edges++;
+                }
+            }
+            if (follows.size() < LOAD_PAGE_SIZE) {
+                return edges;
+            }
+        }
+    }
+
+    /**
+     * 关注或取消关注成功后调用，更新本节点并通知其他节点
+     */
+    public void onFollow(Long userId, Long followUserId, boolean isFollow) {
+        if (!enabled) {
+            return;
+        }
+        apply(userId, followUserId, isFollow);
+        stringRedisTemplate.convertAndSend(RedisConstants.FOLLOW_GRAPH_CHANNEL,
+                userId + ":" + followUserId + ":" + (isFollow ? 1 : 0));
+    }
+
+    private void apply(Long userId, Long followUserId, boolean isFollow) {
+        if (!inRange(userId) || !inRange(followUserId)) {
+            return;
+        }
+        Update update = new Update(userId.intValue(), followUserId.intValue(), isFollow);
+        lock.writeLock().lock();
+        try {
+            applyTo(following, followers, update);
+            if (rebuildUpdates != null) {
+                rebuildUpdates.add(update);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void applyTo(Map<Integer, CompressedIdSet> following, Map<Integer, CompressedIdSet> followers, Update update) {
+        int user = update.user();
+        int followUser = update.followUser();
+        if (update.isFollow()) {
+            following.computeIfAbsent(user, k -> new CompressedIdSet()).add(followUser);
+            followers.computeIfAbsent(followUser, k -> new CompressedIdSet()).add(user);
+        } else {
+            removeEdge(following, user, followUser);
+            removeEdge(followers, followUser, user);
+        }
+    }
+
+    private static void removeEdge(Map<Integer, CompressedIdSet> graph, int from, int to) {
+        CompressedIdSet set = graph.get(from);
+        if (set != null && set.remove(to) && set.cardinality() == 0) {
+            graph.remove(from);
+        }
+    }
+
+    /**
+     * 两个用户共同关注的人，按ID升序
+     */
+    public List<Long> commonFollowees(Long userId, Long otherUserId) {
+        List<Long> ids = new ArrayList<>();
+        if (!inRange(userId) || !inRange(otherUserId)) {
+            return ids;
+        }
+        lock.readLock().lock();
+        try {
+            CompressedIdSet a = following.get(userId.intValue());
+            CompressedIdSet b = following.get(otherUserId.intValue());
+            if (a != null && b != null) {
+                a.and(b).forEach(id -> ids.add(Integer.toUnsignedLong(id)));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return ids;
+    }
+
+    /**
+     * 关注数和粉丝数
+     *
+     * @return following：关注数，followers：粉丝数
+     */
+    public Map<String, Long> counts(Long userId) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            CompressedIdSet a = inRange(userId) ? following.get(userId.intValue()) : null;
+            CompressedIdSet b = inRange(userId) ? followers.get(userId.intValue()) : null;
+            counts.put("following", a == null ? 0L : a.cardinality());
+            counts.put("followers", b == null ? 0L : b.cardinality());
+        } finally {
+            lock.readLock().unlock();
+        }
+        return counts;
+    }
+
+    /**
+     * 好友推荐：关注的人所关注的用户，按被多少个关注的人关注降序、ID升序，排除自己和已关注的用户
+     * 最多扫描suggestScanLimit个关注的人，耗时与关注数无关
+     *
+     * @param userId 用户ID
+     * @param limit  推荐数量
+     * @return 推荐的用户
+     */
+    public List<Suggestion> suggest(Long userId, int limit) {
+        if (!inRange(userId) || limit <= 0) {
+            return List.of();
+        }
+        int user = userId.intValue();
+        Map<Integer, int[]> mutual = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            CompressedIdSet mine = following.get(user);
+            if (mine == null) {
+                return List.of();
+            }
+            //1.统计关注的人所关注的用户出现的次数，扫描到suggestScanLimit个关注的人后停止遍历
+            int[] scanned = {0};
+            mine.forEachWhile(followee -> {
+                if (scanned[0]++ >= suggestScanLimit) {
+                    return false;
+                }
+                CompressedIdSet theirs = following.get(followee);
+                if (theirs != null) {
+                    theirs.forEach(candidate -> {
+                        if (candidate != user && !mine.contains(candidate)) {
+                            mutual.computeIfAbsent(candidate, k -> new int[1])[0]++;
+                        }
+                    });
+                }
+                return true;
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        //2.用大小为limit的堆取出次数最多的用户
+        Comparator<Suggestion> rank = Comparator.comparingInt(Suggestion::mutual).reversed()
+                .thenComparingLong(Suggestion::userId);
+        PriorityQueue<Suggestion> top = new PriorityQueue<>(rank.reversed());
+        mutual.forEach((candidate, count) -> {
+            top.offer(new Suggestion(Integer.toUnsignedLong(candidate), count[0]));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        });
+        List<Suggestion> suggestions = new ArrayList<>(top);
+        suggestions.sort(rank);
+        return suggestions;
+    }
+
+    /**
+     * 内存占用报告
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        lock.readLock().lock();
+        try {
+            long edges = 0;
+            long followingBytes = 0;
+            for (CompressedIdSet set : following.values()) {
+                edges += set.cardinality();
+                followingBytes += set.sizeInBytes();
+            }
+            long followersBytes = 0;
+            for (CompressedIdSet set : followers.values()) {
+                followersBytes += set.sizeInBytes();
+            }
+            //HashMap每个条目约：Node 32字节 + Integer 16字节 + 桶数组引用
+            long mapBytes = (following.size() + followers.size()) * 56L;
+            long totalBytes = followingBytes + followersBytes + mapBytes;
+            stats.put("users", following.size());
+            stats.put("edges", edges);
+            stats.put("followingBitmapBytes", followingBytes);
+            stats.put("followersBitmapBytes", followersBytes);
+            stats.put("mapBytes", mapBytes);
+            stats.put("totalBytes", totalBytes);
+            stats.put("bytesPerEdge", edges == 0 ? 0 : (double) totalBytes / edges);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return stats;
+    }
+
+    /**
+     * 接收其他节点的关注变更通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        String[] parts = body.split(":");
+        try {
+            apply(Long.valueOf(parts[0]), Long.valueOf(parts[1]), "1".equals(parts[2]));
+        } catch (RuntimeException e) {
+            log.warn("无法解析的关注变更消息: {}", body);
+        }
+    }
+
+    private static boolean inRange(Long id) {
+        return id != null && id >= 0 && id <= MAX_ID;
+    }
+}
@@ -0,0 +1,176 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Follow;
+import com.hmdp.mapper.FollowMapper;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 关注关系缓存
+ * 用户关注的人保存在集合 follow:{userId} 中，首次访问时从tb_follow整体加载；集合中总有一个占位成员"0"，
+ * 用于区分"已加载但没有关注任何人"和"未加载"，集合存在即表示已加载；加载只在集合不存在时写入（Lua脚本判断并写入），
+ * 读取数据库后集合已被并发的加载或关注操作创建时丢弃快照，避免已取消的关注被旧快照加回；关注、取消关注先确保集合已加载再修改
+ * 关注数和粉丝数保存在哈希 follow:count:{userId} 中，首次查询时从数据库统计，之后随关注操作增减，定期过期重新统计以修正偏差
+ */
+@Component
+public class FollowGraph {
+
+    public static final String PLACEHOLDER = "0";
+
+    private static final long COUNT_TTL_HOURS = 24;
+
+    private static final DefaultRedisScript<Long> COUNT_SCRIPT;
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT;
+    static {
+        COUNT_SCRIPT = new DefaultRedisScript<>();
+        COUNT_SCRIPT.setLocation(new ClassPathResource("follow_count.lua"));
+        COUNT_SCRIPT.setResultType(Long.class);
+        LOAD_SCRIPT = new DefaultRedisScript<>();
+        LOAD_SCRIPT.setLocation(new ClassPathResource("follow_load.lua"));
+        LOAD_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final FollowMapper followMapper;
+
+    public FollowGraph(StringRedisTemplate stringRedisTemplate, FollowMapper followMapper) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.followMapper = followMapper;
+    }
+
+    /**
+     * 确保用户的关注集合已加载
+     *
+     * @param userId 用户ID
+     * @return 关注集合的key
+     */
+    public String ensureLoaded(Long userId) {
+        String key = RedisConstants.FOLLOW_KEY + userId;
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(key))) {
+            load(userId);
+        }
+        return key;
+    }
+
+    /**
+     * 从数据库加载用户关注的人，连同占位成员一次写入，集合已存在时不写入
+     */
+    private void load(Long userId) {
+        List<Object> followees = followMapper.selectObjs(new QueryWrapper<Follow>()
+                .select("follow_user_id").eq("user_id", userId));
+        String[] members = new String[followees.size() + 1];
+        members[0] = PLACEHOLDER;
+        for (int i = 0; i < followees.size(); i++) {
+            members[i + 1] = followees.get(i).toString();
+        }
+        stringRedisTemplate.execute(LOAD_SCRIPT, List.of(RedisConstants.FOLLOW_KEY + userId), (Object[]) members);
+    }
+
+    /**
+     * 判断是否关注 SISMEMBER follow:{userId} followUserId
+     */
+    public boolean isFollow(Long userId, Long followUserId) {
+        String key = ensureLoaded(userId);
+        return Boolean.TRUE.equals(stringRedisTemplate.opsForSet().isMember(key, followUserId.toString()));
+    }
+
+    /**
+     * 批量判断是否关注，一次 SMISMEMBER follow:{userId} id1 id2 ...
+     *
+     * @param userId        用户ID
+     * @param followUserIds 待判断的用户ID
+     * @return 用户ID -> 是否关注，顺序与参数一致
+     */
+    public Map<Long, Boolean> isFollow(Long userId, Collection<Long> followUserIds) {
+        Map<Long, Boolean> result = new LinkedHashMap<>();
+        if (followUserIds.isEmpty()) {
+            return result;
+        }
+        String key = ensureLoaded(userId);
+        Map<Object, Boolean> members = stringRedisTemplate.opsForSet()
+                .isMember(key, followUserIds.stream().map(Object::toString).toArray());
+        for (Long id : followUserIds) {
+            result.put(id, members != null && Boolean.TRUE.equals(members.get(id.toString())));
+        }
+        return result;
+    }
+
+    /**
+     * 两个用户共同关注的人
+     */
+    public Set<String> commonFollowees(Long userId, Long otherUserId) {
+        Set<String> intersect = stringRedisTemplate.opsForSet().intersect(ensureLoaded(userId), ensureLoaded(otherUserId));
+        if (intersect != null) {
+            intersect.remove(PLACEHOLDER);
+        }
+        return intersect;
+    }
+
+    /**
+     * 关注或取消关注成功（已写入数据库）后调用：修改已加载的关注集合，并增减双方已加载的计数
+     *
+     * @param userId       关注者
+     * @param followUserId 被关注者
+     * @param isFollow     true为关注，false为取消关注
+     */
+    public void onFollow(Long userId, Long followUserId, boolean isFollow) {
+        //1.确保关注集合已加载后再修改：并发加载的快照可能早于本次修改，加载被丢弃时仍需要由这里写入
+        String key = ensureLoaded(userId);
+        if (isFollow) {
+            stringRedisTemplate.opsForSet().add(key, followUserId.toString());
+        } else {
+            stringRedisTemplate.opsForSet().remove(key, followUserId.toString());
+        }
+        //2.增减计数
+        stringRedisTemplate.execute(COUNT_SCRIPT,
+                List.of(RedisConstants.FOLLOW_COUNT_KEY + userId, RedisConstants.FOLLOW_COUNT_KEY + followUserId),
+                isFollow ? "1" : "-1");
+    }
+
+    /**
+     * 查询关注数和粉丝数，未加载的计数从数据库统计后写入
+     *
+     * @param userId 用户ID
+     * @return following：关注数，followers：粉丝数
+     */
+    public Map<String, Long> counts(Long userId) {
+        String key = RedisConstants.FOLLOW_COUNT_KEY + userId;
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(key, List.of("following", "followers"));
+        Map<String, Long> counts = new LinkedHashMap<>();
+        Object following = values.get(0);
+        Object followers = values.get(1);
+        if (following != null && followers != null) {
+            counts.put("following", Long.valueOf(following.toString()));
+            counts.put("followers", Long.valueOf(followers.toString()));
+            return counts;
+        }
+        //计数未加载：从数据库统计，HSETNX不覆盖并发加载的值
+        long followingCount = followMapper.selectCount(new QueryWrapper<Follow>().eq("user_id", userId));
+        long followersCount = followMapper.selectCount(new QueryWrapper<Follow>().eq("follow_user_id", userId));
+        List<Object> loaded = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.hSetNX(key, "following", String.valueOf(followingCount));
+            conn.hSetNX(key, "followers", String.valueOf(followersCount));
+            conn.expire(key, TimeUnit.HOURS.toSeconds(COUNT_TTL_HOURS));
+            conn.hMGet(key, "following", "followers");
+            return null;
+        });
+        @SuppressWarnings("unchecked")
+        List<String> current = (List<String>) loaded.get(3);
+        counts.put("following", Long.valueOf(current.get(0)));
+        counts.put("followers", Long.valueOf(current.get(1)));
+        return counts;
+    }
+}
@@ -0,0 +1,189 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.hmdp.mapper.BlogMapper;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.VoucherMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 商铺、优惠券、笔记ID的布隆过滤器 - 查询前先判断ID是否可能存在，拦截不存在ID的穿透请求
+ * 新增ID通过Redis发布订阅同步到各节点的本地副本，消息格式为 "过滤器名:ID" 或 "过滤器名:reload"
+ */
+@Slf4j
+@Component
+public class IdBloomFilters implements MessageListener {
+
+    public static final String SHOP = "shop";
+    public static final String VOUCHER = "voucher";
+    public static final String BLOG = "blog";
+
+    private static final String RELOAD = "reload";
+    private static final int REBUILD_PAGE_SIZE = 1000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final boolean enabled;
+    private final Map<String, RedisBloomFilter> filters = new LinkedHashMap<>();
+    private final Map<String, BaseMapper<?>> mappers = new LinkedHashMap<>();
+    private final Set<String> ready = ConcurrentHashMap.newKeySet();//已完成加载、可以拦截请求的过滤器
+
+    public IdBloomFilters(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer container,
+                          ShopMapper shopMapper, VoucherMapper voucherMapper, BlogMapper blogMapper,
+                          @Value("${hmdp.bloom.enabled:true}") boolean enabled,
+                          @Value("${hmdp.bloom.expected-insertions:1000000}") long expectedInsertions,
+                          @Value("${hmdp.bloom.fpp:0.01}") double fpp) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.enabled = enabled;
+        mappers.put(SHOP, shopMapper);
+        mappers.put(VOUCHER, voucherMapper);
+        mappers.put(BLOG, blogMapper);
+        for (String name : mappers.keySet()) {
+            filters.put(name, new RedisBloomFilter(stringRedisTemplate, RedisConstants.BLOOM_KEY + name, expectedInsertions, fpp));
+        }
+        if (enabled) {
+            container.addMessageListener(this, new ChannelTopic(RedisConstants.BLOOM_CHANNEL));
+        }
+    }
+
+    /**
+     * 启动时Redis中已有位图则直接加载，否则从数据库全量构建
+     */
+    @PostConstruct
+    private void init() {
+        if (!enabled) {
+            return;
+        }
+        for (String name : filters.keySet()) {
+            try {
+                if (filters.get(name).exists()) {
+                    filters.get(name).loadLocal();
+                    ready.add(name);
+                } else {
+                    rebuild(name);
+                }
+            } catch (Exception e) {
+                //加载失败时该过滤器保持放行，避免误拒正常请求，可通过重建接口恢复
+                log.error("布隆过滤器初始化失败: {}", name, e);
+            }
+        }
+    }
+
+    /**
+     * 判断ID是否可能存在，未开启或过滤器不可用时一律放行
+     *
+     * @param name 过滤器名
+     * @param id   ID
+     * @return false表示一定不存在
+     */
+    public boolean mightContain(String name, Long id) {
+        if (!enabled || id == null || !ready.contains(name)) {
+            return true;
+        }
+        return filters.get(name).mightContain(id);
+    }
+
+    /**
+     * 新增ID，并通知其他节点
+     */
+    public void add(String name, Long id) {
+        RedisBloomFilter filter = filters.get(name);
+        if (!enabled || filter == null || id == null) {
+            return;
+        }
+        filter.add(id);
+        stringRedisTemplate.convertAndSend(RedisConstants.BLOOM_CHANNEL, name + ":" + id);
+    }
+
+    /**
+     * 过滤器放行但数据库中不存在，记为一次误判
+     */
+    public void recordFalsePositive(String name) {
+        RedisBloomFilter filter = filters.get(name);
+        if (filter != null) {
+            filter.recordFalsePositive();
+        }
+    }
+
+    /**
+     * 从数据库全量重建过滤器，按主键游标分页读取ID，并通知其他节点重新加载
+     *
+     * @param name 过滤器名
+     * @return 重建的ID数量
+     */
+    @SuppressWarnings("unchecked")
+    public long rebuild(String name) {
+        BaseMapper<Object> mapper = (BaseMapper<Object>) mappers.get(name);
+        if (mapper == null) {
+            throw new IllegalArgumentException("未知的布隆过滤器: " + name);
+        }
+        RedisBloomFilter filter = filters.get(name);
+        long[] count = {0};
+        filter.rebuild(sink -> {
+            long lastId = 0;
+            while (true) {
+                List<Object> ids = mapper.selectObjs(new QueryWrapper<>()
+                        .select("id").gt("id", lastId).orderByAsc("id").last("LIMIT " + REBUILD_PAGE_SIZE));
+                for (Object id : ids) {
+                    lastId = ((Number) id).longValue();
+                    sink.accept(lastId);
+                }
+                count[0] += ids.size();
+                if (ids.size() < REBUILD_PAGE_SIZE) {
+                    break;
+                }
+            }
+        });
+        ready.add(name);
+        stringRedisTemplate.convertAndSend(RedisConstants.BLOOM_CHANNEL, name + ":" + RELOAD);
+        log.info("布隆过滤器重建完成: {}, ID数量: {}", name, count[0]);
+        return count[0];
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        filters.forEach((name, filter) -> {
+            Map<String, Object> filterStats = filter.stats();
+            filterStats.put("ready", ready.contains(name));
+            stats.put(name, filterStats);
+        });
+        return stats;
+    }
+
+    /**
+     * 接收其他节点新增ID或重建完成的通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int idx = body.indexOf(':');
+        RedisBloomFilter filter = idx < 0 ? null : filters.get(body.substring(0, idx));
+        if (filter == null) {
+            log.warn("无法解析的布隆过滤器消息: {}", body);
+            return;
+        }
+        String value = body.substring(idx + 1);
+        if (RELOAD.equals(value)) {
+            filter.loadLocal();
+            ready.add(body.substring(0, idx));
+        } else {
+            filter.addLocal(Long.parseLong(value));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSON编解码器 - 使用Hutool将数据编码为UTF-8的JSON字符串，可读性好，体积和耗时较大
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+    public static final byte ID = 1;
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, int offset, int length, Class<T> type) {
+        return JSONUtil.toBean(new String(bytes, offset, length, StandardCharsets.UTF_8), type);
+    }
+}
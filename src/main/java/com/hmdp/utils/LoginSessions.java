@@ -0,0 +1,201 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.dto.UserDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 登录会话 - 根据token查询 login:token:{token} 中的用户，并按滑动过期刷新有效期
+ * 可选开启进程内会话缓存（Caffeine），命中时不访问Redis；登出时删除会话并通过发布订阅通知所有节点失效本地副本
+ * 刷新有效期时只在剩余有效期低于阈值时才发送EXPIRE：本地记录会话在Redis中的预计过期时间，剩余有效期足够时不再刷新
+ * 未命中时用一次Lua脚本调用完成查询和按需刷新，脚本按固定顺序返回用户字段，不再通过反射将哈希转为UserDTO；
+ * 保存会话同样用一次Lua脚本调用完成写入和设置有效期
+ */
+@Component
+public class LoginSessions {
+
+    private static final DefaultRedisScript<List> TOUCH_SCRIPT;
+    private static final DefaultRedisScript<Long> SAVE_SCRIPT;
+    static {
+        TOUCH_SCRIPT = new DefaultRedisScript<>();
+        TOUCH_SCRIPT.setLocation(new ClassPathResource("session_touch.lua"));
+        TOUCH_SCRIPT.setResultType(List.class);
+        SAVE_SCRIPT = new DefaultRedisScript<>();
+        SAVE_SCRIPT.setLocation(new ClassPathResource("session_save.lua"));
+        SAVE_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Cache<String, Session> localCache;//会话缓存，未开启时为null
+    private final long ttlMillis = TimeUnit.MINUTES.toMillis(RedisConstants.LOGIN_USER_TTL);
+    private final long refreshBelowMillis;//剩余有效期低于该值时才刷新
+
+    //会话查询统计
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder localMisses = new LongAdder();
+    private final LongAdder expireIssued = new LongAdder();
+    private final LongAdder expireSkipped = new LongAdder();
+    private final LongAdder redisRoundTrips = new LongAdder();//鉴权实际发送的Redis请求数
+
+    public LoginSessions(StringRedisTemplate stringRedisTemplate,
+                         RedisMessageListenerContainer container,
+                         @Value("${hmdp.login.session-cache.enabled:true}") boolean localEnabled,
+                         @Value("${hmdp.login.session-cache.maximum-size:10000}") long localMaximumSize,
+                         @Value("${hmdp.login.session-cache.expire-seconds:30}") long localExpireSeconds,
+                         @Value("${hmdp.login.refresh-interval-minutes:10}") long refreshIntervalMinutes) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.refreshBelowMillis = ttlMillis - TimeUnit.MINUTES.toMillis(refreshIntervalMinutes);
+        if (!localEnabled) {
+            this.localCache = null;
+            return;
+        }
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(Duration.ofSeconds(localExpireSeconds))
+                .build();
+        //订阅登出消息，消息内容为token
+        container.addMessageListener((message, pattern) ->
+                        localCache.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(RedisConstants.LOGIN_LOGOUT_CHANNEL));
+    }
+
+    /**
+     * 缓存的会话，expireAt为会话在Redis中的预计过期时间戳（毫秒）
+     * 其他节点可能已刷新过有效期，预计值只会偏早，最多导致提前刷新
+     */
+    private static final class Session {
+        private final UserDTO user;
+        private volatile long expireAt;
+
+        private Session(UserDTO user, long expireAt) {
+            this.user = user;
+            this.expireAt = expireAt;
+        }
+    }
+
+    /**
+     * 登录成功后保存会话
+     *
+     * @param token   登录令牌
+     * @param userDTO 用户
+     */
+    public void save(String token, UserDTO userDTO) {
+        stringRedisTemplate.execute(SAVE_SCRIPT, List.of(RedisConstants.LOGIN_USER_KEY + token),
+                Long.toString(ttlMillis), userDTO.getId().toString(),
+                StrUtil.nullToEmpty(userDTO.getNickName()), StrUtil.nullToEmpty(userDTO.getIcon()));
+        if (localCache != null) {
+            localCache.put(token, new Session(userDTO, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    /**
+     * 查询token对应的用户并按需刷新有效期
+     *
+     * @param token 登录令牌
+     * @return 用户，会话不存在或已过期时返回null
+     */
+    public UserDTO get(String token) {
+        long now = System.currentTimeMillis();
+        //1.查询本地会话缓存
+        Session session = localCache == null ? null : localCache.getIfPresent(token);
+        if (session == null || session.expireAt <= now) {
+            //2.未命中，一次脚本调用查询用户并按需刷新有效期
+            localMisses.increment();
+            session = load(token, now);
+            return session == null ? null : session.user;
+        }
+        //3.命中，剩余有效期低于阈值时才刷新
+        localHits.increment();
+        if (session.expireAt - now < refreshBelowMillis) {
+            stringRedisTemplate.expire(RedisConstants.LOGIN_USER_KEY + token, RedisConstants.LOGIN_USER_TTL, TimeUnit.MINUTES);
+            redisRoundTrips.increment();
+            session.expireAt = now + ttlMillis;
+            expireIssued.increment();
+        } else {
+            expireSkipped.increment();
+        }
+        return session.user;
+    }
+
+    /**
+     * 执行查询并刷新会话的脚本，脚本返回 {id, nickName, icon, 剩余有效期毫秒, 是否刷新}
+     */
+    private Session load(String token, long now) {
+        List<?> result = stringRedisTemplate.execute(TOUCH_SCRIPT, List.of(RedisConstants.LOGIN_USER_KEY + token),
+                Long.toString(ttlMillis), Long.toString(refreshBelowMillis));
+        redisRoundTrips.increment();
+        if (result == null || result.size() < 5) {
+            if (localCache != null) {
+                localCache.invalidate(token);
+            }
+            return null;
+        }
+        UserDTO userDTO = new UserDTO();
+        userDTO.setId(Long.valueOf(result.get(0).toString()));
+        userDTO.setNickName(StrUtil.emptyToNull(result.get(1).toString()));
+        userDTO.setIcon(StrUtil.emptyToNull(result.get(2).toString()));
+        if ("1".equals(result.get(4).toString())) {
+            expireIssued.increment();
+        } else {
+            expireSkipped.increment();
+        }
+        Session session = new Session(userDTO, now + Long.parseLong(result.get(3).toString()));
+        if (localCache != null) {
+            localCache.put(token, session);
+        }
+        return session;
+    }
+
+    /**
+     * 登出：删除会话，并通知所有节点失效本地会话缓存
+     *
+     * @param token 登录令牌
+     */
+    public void remove(String token) {
+        stringRedisTemplate.delete(RedisConstants.LOGIN_USER_KEY + token);
+        if (localCache != null) {
+            localCache.invalidate(token);
+            stringRedisTemplate.convertAndSend(RedisConstants.LOGIN_LOGOUT_CHANNEL, token);
+        }
+    }
+
+    /**
+     * 查询会话统计
+     *
+     * @return 本地会话缓存命中率、发送和省去的Redis请求数
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hits = localHits.sum();
+        long misses = localMisses.sum();
+        long skipped = expireSkipped.sum();
+        stats.put("localCacheEnabled", localCache != null);
+        stats.put("localHits", hits);
+        stats.put("localMisses", misses);
+        stats.put("localHitRate", hits + misses == 0 ? 1.0 : (double) hits / (hits + misses));
+        stats.put("localSize", localCache == null ? 0 : localCache.estimatedSize());
+        stats.put("expireIssued", expireIssued.sum());
+        stats.put("expireSkipped", skipped);
+        //原实现每次请求发送HGETALL和EXPIRE两次请求
+        long roundTrips = redisRoundTrips.sum();
+        stats.put("redisRoundTrips", roundTrips);
+        stats.put("redisRoundTripsSaved", 2 * (hits + misses) - roundTrips);
+        return stats;
+    }
+}
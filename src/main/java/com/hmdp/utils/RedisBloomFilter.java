@@ -0,0 +1,297 @@
+package com.hmdp.utils;
+
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * 基于Redis位图的布隆过滤器 - 位图保存在Redis中供所有节点共享，本地保留一份副本用于判断
+ * 判断是否存在只读本地副本，不访问Redis；新增元素同时写本地副本和Redis位图
+ * 位图的位序与Redis SETBIT一致：第offset位位于第offset/8个字节的高位起第offset%8位
+ * 全量重建期间新增的元素会被记录下来，新位图替换旧位图后重新写入，避免重建覆盖掉这期间新增的元素
+ */
+public class RedisBloomFilter {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String key;
+    private final byte[] rawKey;
+    private final long numBits;//位图大小
+    private final int numHashes;//哈希函数个数
+    private volatile AtomicLongArray localBits;//本地副本
+    private volatile Queue<Long> rebuildAdds;//重建或加载期间新增的元素，其余时间为null
+
+    private final LongAdder rejected = new LongAdder();//判定不存在而被拦截的次数
+    private final LongAdder passed = new LongAdder();//判定可能存在而放行的次数
+    private final LongAdder falsePositives = new LongAdder();//放行后数据库中仍不存在的次数
+
+    /**
+     * @param expectedInsertions 预计元素数量
+     * @param fpp                期望误判率
+     */
+    public RedisBloomFilter(StringRedisTemplate stringRedisTemplate, String key, long expectedInsertions, double fpp) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.key = key;
+        this.rawKey = key.getBytes(StandardCharsets.UTF_8);
+        // m = -n*ln(p)/(ln2)^2，按64位对齐；k = m/n*ln2
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.numBits = Math.max(64, (bits + 63) / 64 * 64);
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+        this.localBits = new AtomicLongArray((int) (numBits / 64));
+    }
+
+    /**
+     * 判断元素是否可能存在，只读本地副本
+     *
+     * @param id 元素
+     * @return false表示一定不存在
+     */
+    public boolean mightContain(long id) {
+        AtomicLongArray bits = localBits;
+        long hash1 = mix64(id);
+        long hash2 = mix64(hash1 ^ 0x9E3779B97F4A7C15L);
+        for (int i = 1; i <= numHashes; i++) {
+            long offset = Math.floorMod(hash1 + i * hash2, numBits);
+            if ((bits.get((int) (offset >>> 6)) & (1L << (offset & 63))) == 0) {
+                rejected.increment();
+                return false;
+            }
+        }
+        passed.increment();
+        return true;
+    }
+
+    /**
+     * 新增元素，写入本地副本和Redis位图
+     *
+     * @param id 元素
+     */
+    public void add(long id) {
+        Queue<Long> pending = rebuildAdds;
+        if (pending != null) {
+            pending.add(id);
+        }
+        long[] offsets = offsets(id);
+        setLocal(offsets);
+        //管道批量执行SETBIT
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long offset : offsets) {
+                connection.stringCommands().setBit(rawKey, offset, true);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 只写本地副本，用于接收其他节点新增元素的通知
+     */
+    public void addLocal(long id) {
+        //重建期间其他节点新增的元素可能写入了即将被替换的旧位图，同样记录下来重新写入
+        Queue<Long> pending = rebuildAdds;
+        if (pending != null) {
+            pending.add(id);
+        }
+        setLocal(offsets(id));
+    }
+
+    /**
+     * Redis中是否已存在位图
+     */
+    public boolean exists() {
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(key));
+    }
+
+    /**
+     * 从Redis加载位图到本地副本
+     */
+    public void loadLocal() {
+        //加载期间收到的新增元素可能写入了即将被替换的旧副本，替换后重新写入本地
+        Queue<Long> pending = new ConcurrentLinkedQueue<>();
+        rebuildAdds = pending;
+        try {
+            doLoadLocal();
+        } finally {
+            rebuildAdds = null;
+        }
+        Long id;
+        while ((id = pending.poll()) != null) {
+            setLocal(offsets(id));
+        }
+    }
+
+    private void doLoadLocal() {
+        byte[] bytes = stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey));
+        AtomicLongArray bits = new AtomicLongArray((int) (numBits / 64));
+        if (bytes != null) {
+            int length = (int) Math.min(bytes.length, numBits / 8);
+            for (int i = 0; i < length; i++) {
+                for (int j = 0; j < 8; j++) {
+                    if ((bytes[i] & (0x80 >>> j)) != 0) {
+                        setLocal(bits, (long) i * 8 + j);
+                    }
+                }
+            }
+        }
+        localBits = bits;
+    }
+
+    /**
+     * 全量重建：在本地构建新位图，写入临时key后RENAME替换，重建期间旧位图仍然可用
+     *
+     * @param source 遍历全部元素，每个元素回调一次
+     */
+    public void rebuild(Consumer<LongConsumer> source) {
+        Queue<Long> pending = new ConcurrentLinkedQueue<>();
+        rebuildAdds = pending;
+        try {
+            doRebuild(source, pending);
+        } finally {
+            rebuildAdds = null;
+        }
+        //补写停止记录前最后加入的元素
+        replay(pending);
+    }
+
+    private void doRebuild(Consumer<LongConsumer> source, Queue<Long> pending) {
+        AtomicLongArray bits = new AtomicLongArray((int) (numBits / 64));
+        source.accept(id -> {
+            for (long offset : offsets(id)) {
+                setLocal(bits, offset);
+            }
+        });
+        //转换为Redis位图的字节序
+        byte[] bytes = new byte[(int) (numBits / 8)];
+        for (int w = 0; w < bits.length(); w++) {
+            long word = bits.get(w);
+            for (int b = 0; word != 0 && b < 64; b++) {
+                if ((word & (1L << b)) != 0) {
+                    long offset = (long) w * 64 + b;
+                    bytes[(int) (offset >>> 3)] |= (byte) (0x80 >>> (offset & 7));
+                }
+            }
+        }
+        byte[] tmpKey = (key + ":tmp").getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.stringCommands().set(tmpKey, bytes, Expiration.persistent(),
+                    RedisStringCommands.SetOption.upsert());
+            connection.keyCommands().rename(tmpKey, rawKey);
+            return null;
+        });
+        localBits = bits;
+        //重新写入重建期间新增的元素
+        replay(pending);
+    }
+
+    /**
+     * 将记录的新增元素写入当前的本地副本和Redis位图
+     */
+    private void replay(Queue<Long> pending) {
+        List<long[]> offsetsList = new ArrayList<>();
+        Long id;
+        while ((id = pending.poll()) != null) {
+            long[] offsets = offsets(id);
+            setLocal(offsets);
+            offsetsList.add(offsets);
+        }
+        if (offsetsList.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (long[] offsets : offsetsList) {
+                for (long offset : offsets) {
+                    connection.stringCommands().setBit(rawKey, offset, true);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 放行后数据库中不存在，记为一次误判
+     */
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    /**
+     * 统计信息：理论误判率按本地副本中已置位的比例估算，实际误判率为不存在的id中被放行的比例
+     */
+    public Map<String, Object> stats() {
+        AtomicLongArray bits = localBits;
+        long setBits = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            setBits += Long.bitCount(bits.get(i));
+        }
+        double fillRatio = (double) setBits / numBits;
+        long fp = falsePositives.sum();
+        long rejectedCount = rejected.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("bits", numBits);
+        stats.put("hashes", numHashes);
+        stats.put("fillRatio", fillRatio);
+        // n ≈ -m/k * ln(1 - X/m)
+        stats.put("estimatedInsertions", fillRatio >= 1 ? -1 : Math.round(-(double) numBits / numHashes * Math.log(1 - fillRatio)));
+        stats.put("expectedFpp", Math.pow(fillRatio, numHashes));
+        stats.put("rejected", rejectedCount);
+        stats.put("passed", passed.sum());
+        stats.put("falsePositives", fp);
+        stats.put("observedFpp", fp + rejectedCount == 0 ? 0.0 : (double) fp / (fp + rejectedCount));
+        return stats;
+    }
+
+    private long[] offsets(long id) {
+        long hash1 = mix64(id);
+        long hash2 = mix64(hash1 ^ 0x9E3779B97F4A7C15L);
+        long[] offsets = new long[numHashes];
+        for (int i = 1; i <= numHashes; i++) {
+            offsets[i - 1] = Math.floorMod(hash1 + i * hash2, numBits);
+        }
+        return offsets;
+    }
+
+    /**
+     * 写入本地副本；写入期间本地副本被替换时，再写入一次新的副本
+     */
+    private void setLocal(long[] offsets) {
+        AtomicLongArray bits;
+        do {
+            bits = localBits;
+            for (long offset : offsets) {
+                setLocal(bits, offset);
+            }
+        } while (bits != localBits);
+    }
+
+    private static void setLocal(AtomicLongArray bits, long offset) {
+        int index = (int) (offset >>> 6);
+        long mask = 1L << (offset & 63);
+        long old;
+        do {
+            old = bits.get(index);
+            if ((old & mask) != 0) {
+                return;
+            }
+        } while (!bits.compareAndSet(index, old, old | mask));
+    }
+
+    /**
+     * MurmurHash3的64位混淆函数
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
@@ -9,20 +9,55 @@ public class RedisConstants {
     public static final Long LOGIN_CODE_TTL = 2L;
     public static final String LOGIN_USER_KEY = "login:token:";
     public static final Long LOGIN_USER_TTL = 36000L;
+    public static final String LOGIN_LOGOUT_CHANNEL = "login:logout";
+    public static final String LOGIN_REFRESH_KEY = "login:refresh:";
+    public static final String LOGIN_REVOKED_KEY = "login:revoked";
+    public static final String LOGIN_REVOKED_CHANNEL = "login:revoked:changed";
 
     public static final Long CACHE_NULL_TTL = 2L;
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final Long CACHE_BLOG_TTL = 30L;
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    public static final String BLOOM_KEY = "bloom:";
+    public static final String BLOOM_CHANNEL = "bloom:changed";
 
     public static final String LOCK_ORDER_KEY = "lock:order:";
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:soldout";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_BUCKETS_KEY = "seckill:buckets";
+    public static final String SECKILL_TRANSIT_KEY = "seckill:transit:";
+    public static final String SECKILL_RECEIVED_KEY = "seckill:received:";
+    public static final String SECKILL_BUCKETS_CHANNEL = "seckill:buckets:changed";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+    public static final String BLOG_LIKE_DIRTY_KEY = "blog:like:dirty";
+    public static final String BLOG_LIKE_DIRTY_SINCE_KEY = "blog:like:dirty:since";
+    public static final String BLOG_LIKE_FLUSHING_KEY = "blog:like:flushing";
+    public static final String BLOG_LIKE_FLUSHING_SINCE_KEY = "blog:like:flushing:since";
+    public static final String BLOG_LIKE_FLUSHING_ID_KEY = "blog:like:flushing:id";
+    public static final String BLOG_LIKE_FLUSH_SEQ_KEY = "blog:like:flush:seq";
+    public static final String BLOG_LIKE_FAILED_KEY = "blog:like:failed";
+    public static final String LOCK_BLOG_LIKE_FLUSH_KEY = "lock:blog:like:flush";
+    public static final String BLOG_HOT_KEY = "blog:hot";
     public static final String FEED_KEY = "feed:";
+    public static final String FEED_OUTBOX_KEY = "feed:out:";
+    public static final String FEED_BIG_AUTHORS_KEY = "feed:big";
+    public static final String FOLLOW_KEY = "follow:";
+    public static final String FOLLOW_COUNT_KEY = "follow:count:";
+    public static final String FOLLOW_GRAPH_CHANNEL = "follow:graph:changed";
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    public static final String SHOP_GEO_PENDING_KEY = "shop:geo:pending:";
+    public static final Long SHOP_GEO_LOAD_TTL = 10L;
+    public static final String SHOP_GEO_CHANNEL = "shop:geo:changed";
+    public static final String SHOP_NAME_CHANNEL = "shop:name:changed";
     public static final String USER_SIGN_KEY = "sign:";
     public static final String CACHE_SHOP_TYPE_KEY = "cache:shopType:";
     
@@ -32,4 +67,8 @@ public class RedisConstants {
     //SECKILL_VOUCHER_ORDER="order"
     public static final String SECKILL_VOUCHER_ORDER = "order";
     public static final String STREAM_ORDER_KEY="stream.orders";
+    public static final String STREAM_ORDER_GROUP = "g1";
+    public static final String STREAM_ORDER_DLQ_KEY = "stream.orders.dlq";
+    public static final String STREAM_FEED_KEY = "stream.feed";
+    public static final String STREAM_FEED_GROUP = "g1";
 }
\ No newline at end of file
@@ -1,17 +1,33 @@
 package com.hmdp.utils;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 全局ID生成器 - 高32位为时间戳（秒），低32位为当天的序列号
+ * 序列号按号段分配：一次INCRBY预留一段序列号，在内存中通过AtomicLong无锁发放，
+ * 当前号段剩余20%时异步预取下一个号段，避免每次生成ID都访问Redis
+ */
 @Component
 public class RedisIdWorker {
 
-    public RedisIdWorker(StringRedisTemplate stringRedisTemplate) {
+    public RedisIdWorker(StringRedisTemplate stringRedisTemplate,
+                         @Value("${hmdp.id.segment-step:1000}") long segmentStep) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.segmentStep = segmentStep;
+        this.prefetchRemaining = Math.max(1, segmentStep / 5);
     }
 
     // 起始时间戳
@@ -19,19 +35,117 @@ public class RedisIdWorker {
 
     // 序列号位数
     private static final long COUNT_BITS = 32;
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+    // 号段预取线程
+    private static final ExecutorService SEGMENT_PREFETCH_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "id-segment-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private StringRedisTemplate stringRedisTemplate;
+    private final long segmentStep;//每个号段的大小
+    private final long prefetchRemaining;//号段剩余多少时预取下一个号段
+    private final Map<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+    private volatile Day today = new Day(0, 0, null);
 
     public long nextId(String keyPrefix) {
         //1.生成时间戳
-        LocalDateTime now = LocalDateTime.now();
-        long nowSecond = now.toInstant(ZoneOffset.UTC).toEpochMilli();
+        long nowSecond = Instant.now().getEpochSecond();
         long timestamp = nowSecond - BEGIN_TIMESTAMP;
         //2.生成序列号
-        //2.1.获取当前日期，精确到天
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        //2.2.自增长
-        Long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+        //2.1.获取当前日期（系统时区），精确到天，只在跨天时重新格式化
+        String date = currentDate(nowSecond);
+        //2.2.从号段中取号
+        long count = buffers.computeIfAbsent(keyPrefix, SegmentBuffer::new).nextSequence(date);
         //3.拼接并返回
         return timestamp << COUNT_BITS | count;
     }
+
+    private String currentDate(long nowSecond) {
+        Day day = today;
+        if (nowSecond < day.startSecond || nowSecond >= day.endSecond) {
+            ZoneId zone = ZoneId.systemDefault();
+            LocalDate date = LocalDate.ofInstant(Instant.ofEpochSecond(nowSecond), zone);
+            day = new Day(date.atStartOfDay(zone).toEpochSecond(), date.plusDays(1).atStartOfDay(zone).toEpochSecond(),
+                    date.format(DATE_FORMATTER));
+            today = day;
+        }
+        return day.date;
+    }
+
+    /**
+     * 从Redis预留一个号段 INCRBY icr:{keyPrefix}:{date} step
+     */
+    private Segment loadSegment(String keyPrefix, String date) {
+        Long max = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date, segmentStep);
+        if (max == null) {
+            throw new IllegalStateException("获取ID号段失败: " + keyPrefix);
+        }
+        return new Segment(date, max - segmentStep + 1, max);
+    }
+
+    /**
+     * 当天的日期及其在系统时区下的起止时间戳（秒），[startSecond, endSecond)
+     */
+    private record Day(long startSecond, long endSecond, String date) {
+    }
+
+    /**
+     * 号段：[cursor, max] 之间的序列号可以在内存中直接发放
+     */
+    private static final class Segment {
+        final String date;
+        final AtomicLong cursor;
+        final long max;
+
+        Segment(String date, long min, long max) {
+            this.date = date;
+            this.cursor = new AtomicLong(min);
+            this.max = max;
+        }
+    }
+
+    /**
+     * 某个业务前缀的双号段缓冲：当前号段 + 预取中的下一个号段
+     */
+    private final class SegmentBuffer {
+        private final String keyPrefix;
+        private volatile Segment current;
+        private volatile CompletableFuture<Segment> next;
+
+        SegmentBuffer(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+
+        long nextSequence(String date) {
+            while (true) {
+                Segment segment = current;
+                if (segment != null && segment.date.equals(date)) {
+                    //1.无锁取号
+                    long value = segment.cursor.getAndIncrement();
+                    if (value <= segment.max) {
+                        //2.剩余20%时异步预取下一个号段，每个号段只有取到该位置的线程会触发
+                        if (segment.max - value == prefetchRemaining) {
+                            next = CompletableFuture.supplyAsync(() -> loadSegment(keyPrefix, date), SEGMENT_PREFETCH_EXECUTOR);
+                        }
+                        return value;
+                    }
+                }
+                //3.号段用完或跨天，切换号段
+                switchSegment(segment, date);
+            }
+        }
+
+        private synchronized void switchSegment(Segment exhausted, String date) {
+            if (current != exhausted) {
+                //其他线程已经完成切换
+                return;
+            }
+            CompletableFuture<Segment> prefetched = next;
+            next = null;
+            Segment segment = prefetched == null ? null : prefetched.exceptionally(e -> null).join();
+            current = segment != null && segment.date.equals(date) ? segment : loadSegment(keyPrefix, date);
+        }
+    }
 }
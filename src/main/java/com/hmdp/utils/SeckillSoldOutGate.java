@@ -0,0 +1,97 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 秒杀券本地售罄标记 - 已售罄的券在JVM内直接拒绝，不再访问Redis
+ * 标记通过Redis发布订阅同步到所有节点，消息格式为 "1:券ID"（售罄）或 "0:券ID"（清除）
+ */
+@Slf4j
+@Component
+public class SeckillSoldOutGate implements MessageListener {
+
+    private static final String SOLD_OUT = "1";
+    private static final String CLEAR = "0";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Set<Long> soldOutVouchers = ConcurrentHashMap.newKeySet();//已售罄的券
+    private final LongAdder shedCount = new LongAdder();//本地直接拒绝的请求数
+
+    public SeckillSoldOutGate(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer container) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        container.addMessageListener(this, new ChannelTopic(RedisConstants.SECKILL_SOLD_OUT_CHANNEL));
+    }
+
+    /**
+     * 判断券是否已售罄，售罄时计入拒绝次数
+     *
+     * @param voucherId 券ID
+     * @return 是否已售罄
+     */
+    public boolean isSoldOut(Long voucherId) {
+        if (!soldOutVouchers.contains(voucherId)) {
+            return false;
+        }
+        shedCount.increment();
+        return true;
+    }
+
+    /**
+     * 标记券已售罄，并通知其他节点
+     *
+     * @param voucherId 券ID
+     */
+    public void markSoldOut(Long voucherId) {
+        if (soldOutVouchers.add(voucherId)) {
+            stringRedisTemplate.convertAndSend(RedisConstants.SECKILL_SOLD_OUT_CHANNEL, SOLD_OUT + ":" + voucherId);
+        }
+    }
+
+    /**
+     * 清除券的售罄标记（补货或同步库存后），并通知其他节点
+     *
+     * @param voucherId 券ID
+     */
+    public void clear(Long voucherId) {
+        soldOutVouchers.remove(voucherId);
+        stringRedisTemplate.convertAndSend(RedisConstants.SECKILL_SOLD_OUT_CHANNEL, CLEAR + ":" + voucherId);
+    }
+
+    public long getShedCount() {
+        return shedCount.sum();
+    }
+
+    public int getSoldOutCount() {
+        return soldOutVouchers.size();
+    }
+
+    /**
+     * 接收其他节点发布的售罄标记变更
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int idx = body.indexOf(':');
+        if (idx < 0) {
+            log.warn("无法解析的售罄标记消息: {}", body);
+            return;
+        }
+        Long voucherId = Long.valueOf(body.substring(idx + 1));
+        if (SOLD_OUT.equals(body.substring(0, idx))) {
+            soldOutVouchers.add(voucherId);
+        } else {
+            soldOutVouchers.remove(voucherId);
+        }
+    }
+}
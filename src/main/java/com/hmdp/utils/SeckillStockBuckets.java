@@ -0,0 +1,312 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 秒杀券分桶库存 - 将热点券的库存拆分到多个桶中，分散到不同的Redis slot
+ * 桶的库存key为 seckill:stock:{券ID:桶号}，订单key为 seckill:order:{券ID:桶号}，同一个桶的库存和订单落在同一个slot
+ * 每次脚本调用只访问同一个桶（同一个slot）的key，可在Redis Cluster中执行：先扣用户所属的桶，库存不足时再逐个扣其他桶
+ * 再平衡跨桶搬运库存时先在源桶记录在途库存，转入目标桶按转移id去重，任一步骤中断都可以补发而不会丢失或重复库存
+ * 各券的桶数量保存在 seckill:buckets 哈希中，本地缓存一份，变更时通过发布订阅通知其他节点重新加载
+ */
+@Slf4j
+@Component
+public class SeckillStockBuckets implements MessageListener {
+
+    private static final DefaultRedisScript<Long> HOME_SCRIPT;
+    private static final DefaultRedisScript<Long> TAKE_SCRIPT;
+    private static final DefaultRedisScript<Long> DRAIN_SCRIPT;
+    private static final DefaultRedisScript<Long> RECEIVE_SCRIPT;
+    static {
+        HOME_SCRIPT = new DefaultRedisScript<>();
+        HOME_SCRIPT.setLocation(new ClassPathResource("seckill_bucket_home.lua"));
+        HOME_SCRIPT.setResultType(Long.class);
+        TAKE_SCRIPT = new DefaultRedisScript<>();
+        TAKE_SCRIPT.setLocation(new ClassPathResource("seckill_bucket_take.lua"));
+        TAKE_SCRIPT.setResultType(Long.class);
+        DRAIN_SCRIPT = new DefaultRedisScript<>();
+        DRAIN_SCRIPT.setLocation(new ClassPathResource("seckill_bucket_drain.lua"));
+        DRAIN_SCRIPT.setResultType(Long.class);
+        RECEIVE_SCRIPT = new DefaultRedisScript<>();
+        RECEIVE_SCRIPT.setLocation(new ClassPathResource("seckill_bucket_receive.lua"));
+        RECEIVE_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 扣减结果：重复下单
+     */
+    public static final int DUPLICATE = -2;
+    /**
+     * 扣减结果：所有桶库存不足
+     */
+    public static final int SOLD_OUT = -1;
+    /**
+     * 扣减结果：没有桶能扣减，且有桶的库存key不存在（未加载或被淘汰），不能视为售罄
+     */
+    public static final int NOT_LOADED = -3;
+
+    private static final long RECEIVED_TTL_SECONDS = TimeUnit.DAYS.toSeconds(1);//已接收转移id的保留时长
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Map<Long, Integer> bucketCounts = new ConcurrentHashMap<>();//券ID -> 桶数量，只保存分桶的券
+
+    @Value("${hmdp.seckill.stock.drain-threshold:5}")
+    private int drainThreshold;//库存不超过该值的桶会被清空，剩余库存并入库存最多的桶
+    @Value("${hmdp.seckill.stock.rebalance-interval-ms:1000}")
+    private long rebalanceIntervalMillis;//再平衡任务执行间隔
+
+    private ScheduledExecutorService rebalanceExecutor;
+
+    public SeckillStockBuckets(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer container) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        container.addMessageListener(this, new ChannelTopic(RedisConstants.SECKILL_BUCKETS_CHANNEL));
+    }
+
+    /**
+     * 加载所有分桶券的桶数量，并启动再平衡任务
+     */
+    @PostConstruct
+    public void init() {
+        stringRedisTemplate.opsForHash().entries(RedisConstants.SECKILL_BUCKETS_KEY).forEach((voucherId, count) ->
+                bucketCounts.put(Long.valueOf(voucherId.toString()), Integer.valueOf(count.toString())));
+        rebalanceExecutor = Executors.newSingleThreadScheduledExecutor();
+        rebalanceExecutor.scheduleWithFixedDelay(this::rebalance, rebalanceIntervalMillis, rebalanceIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        rebalanceExecutor.shutdown();
+    }
+
+    public static String stockKey(Long voucherId, int bucket) {
+        return RedisConstants.SECKILL_STOCK_KEY + "{" + voucherId + ":" + bucket + "}";
+    }
+
+    public static String orderKey(Long voucherId, int bucket) {
+        return RedisConstants.SECKILL_ORDER_KEY + "{" + voucherId + ":" + bucket + "}";
+    }
+
+    private static String transitKey(Long voucherId, int bucket) {
+        return RedisConstants.SECKILL_TRANSIT_KEY + "{" + voucherId + ":" + bucket + "}";
+    }
+
+    private static String receivedKey(Long voucherId, int bucket) {
+        return RedisConstants.SECKILL_RECEIVED_KEY + "{" + voucherId + ":" + bucket + "}";
+    }
+
+    /**
+     * 查询券的桶数量
+     *
+     * @param voucherId 券ID
+     * @return 桶数量，未分桶的券返回1
+     */
+    public int bucketCount(Long voucherId) {
+        return bucketCounts.getOrDefault(voucherId, 1);
+    }
+
+    /**
+     * 计算用户所属的桶，同一用户始终落在同一个桶，一人一单在该桶的订单集合中判断
+     */
+    public int homeBucket(Long userId, int bucketCount) {
+        return Math.floorMod(userId, bucketCount);
+    }
+
+    /**
+     * 扣减一件库存：先在用户所属的桶中判断一人一单并扣减，该桶库存不足时依次扣减其他桶
+     * 每次脚本调用只访问一个桶的key；所有桶都不足时移除在用户所属桶中的预占
+     *
+     * @param voucherId   券ID
+     * @param userId      用户ID
+     * @param bucketCount 桶数量
+     * @return 扣减库存的桶号，或 {@link #SOLD_OUT}、{@link #DUPLICATE}、{@link #NOT_LOADED}
+     */
+    public int deduct(Long voucherId, Long userId, int bucketCount) {
+        String user = userId.toString();
+        int home = homeBucket(userId, bucketCount);
+        //1.用户所属的桶：判断一人一单、预占用户并尝试扣减
+        Long result = stringRedisTemplate.execute(HOME_SCRIPT,
+                List.of(stockKey(voucherId, home), orderKey(voucherId, home)), user);
+        if (result == null || result == 2) {
+            return DUPLICATE;
+        }
+        if (result == 0) {
+            return home;
+        }
+        boolean missing = result == 4;
+        //2.依次尝试其他桶
+        for (int i = 1; i < bucketCount; i++) {
+            int bucket = (home + i) % bucketCount;
+            Long taken = stringRedisTemplate.execute(TAKE_SCRIPT, Collections.singletonList(stockKey(voucherId, bucket)));
+            if (taken != null && taken == 0) {
+                return bucket;
+            }
+            missing |= taken != null && taken == 2;
+        }
+        //3.所有桶都没有扣减成功，移除预占；有桶的库存key不存在时不能确定已售罄
+        stringRedisTemplate.opsForSet().remove(orderKey(voucherId, home), user);
+        return missing ? NOT_LOADED : SOLD_OUT;
+    }
+
+    /**
+     * 下单消息发送失败时回滚扣减：归还库存并移除用户的下单记录
+     *
+     * @param voucherId   券ID
+     * @param userId      用户ID
+     * @param bucketCount 桶数量
+     * @param bucket      扣减库存的桶号
+     */
+    public void rollback(Long voucherId, Long userId, int bucketCount, int bucket) {
+        stringRedisTemplate.opsForValue().increment(stockKey(voucherId, bucket));
+        stringRedisTemplate.opsForSet().remove(orderKey(voucherId, homeBucket(userId, bucketCount)), userId.toString());
+    }
+
+    /**
+     * 按桶数量平均拆分库存并写入Redis，同时登记桶数量并通知其他节点
+     *
+     * @param voucherId   券ID
+     * @param stock       总库存
+     * @param bucketCount 桶数量，必须大于1
+     */
+    public void initStock(Long voucherId, int stock, int bucketCount) {
+        Map<String, String> stocks = new LinkedHashMap<>();
+        for (int i = 0; i < bucketCount; i++) {
+            // 余数分给前面的桶
+            int bucketStock = stock / bucketCount + (i < stock % bucketCount ? 1 : 0);
+            stocks.put(stockKey(voucherId, i), String.valueOf(bucketStock));
+        }
+        stringRedisTemplate.opsForValue().multiSet(stocks);
+        stringRedisTemplate.opsForHash().put(RedisConstants.SECKILL_BUCKETS_KEY, voucherId.toString(), String.valueOf(bucketCount));
+        bucketCounts.put(voucherId, bucketCount);
+        stringRedisTemplate.convertAndSend(RedisConstants.SECKILL_BUCKETS_CHANNEL, voucherId.toString());
+    }
+
+    /**
+     * 删除券的所有桶，并通知其他节点
+     *
+     * @param voucherId 券ID
+     */
+    public void remove(Long voucherId) {
+        int bucketCount = bucketCount(voucherId);
+        if (bucketCount <= 1) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(bucketCount * 4);
+        for (int i = 0; i < bucketCount; i++) {
+            keys.add(stockKey(voucherId, i));
+            keys.add(orderKey(voucherId, i));
+            keys.add(transitKey(voucherId, i));
+            keys.add(receivedKey(voucherId, i));
+        }
+        stringRedisTemplate.delete(keys);
+        stringRedisTemplate.opsForHash().delete(RedisConstants.SECKILL_BUCKETS_KEY, voucherId.toString());
+        bucketCounts.remove(voucherId);
+        stringRedisTemplate.convertAndSend(RedisConstants.SECKILL_BUCKETS_CHANNEL, voucherId.toString());
+    }
+
+    /**
+     * 再平衡：清空库存所剩无几的桶，将剩余库存并入库存最多的桶
+     * 这样落在这些桶上的用户不会只抢到零星库存，而是尽快转向库存集中的桶
+     */
+    public void rebalance() {
+        bucketCounts.forEach((voucherId, bucketCount) -> {
+            try {
+                rebalance(voucherId, bucketCount);
+            } catch (Exception e) {
+                log.error("分桶库存再平衡异常，券ID: {}", voucherId, e);
+            }
+        });
+    }
+
+    private void rebalance(Long voucherId, int bucketCount) {
+        //0.补发上次中断的在途库存
+        for (int i = 0; i < bucketCount; i++) {
+            String transitKey = transitKey(voucherId, i);
+            stringRedisTemplate.opsForHash().entries(transitKey).forEach((transferId, value) -> {
+                String[] targetAndAmount = value.toString().split(":");
+                deliver(voucherId, transitKey, transferId.toString(),
+                        Integer.parseInt(targetAndAmount[0]), Long.parseLong(targetAndAmount[1]));
+            });
+        }
+        //1.批量查询所有桶的库存
+        List<String> keys = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            keys.add(stockKey(voucherId, i));
+        }
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+        if (values == null) {
+            return;
+        }
+        int[] stocks = new int[bucketCount];
+        int target = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            stocks[i] = values.get(i) == null ? 0 : Integer.parseInt(values.get(i));
+            if (stocks[i] > stocks[target]) {
+                target = i;
+            }
+        }
+        //2.库存最多的桶也所剩无几时不再搬运
+        if (stocks[target] <= drainThreshold) {
+            return;
+        }
+        //3.依次清空库存不超过阈值的桶，取出的库存先记为在途，再并入目标桶
+        for (int i = 0; i < bucketCount; i++) {
+            if (i == target || stocks[i] <= 0 || stocks[i] > drainThreshold) {
+                continue;
+            }
+            String transitKey = transitKey(voucherId, i);
+            String transferId = UUID.randomUUID().toString(true);
+            Long drained = stringRedisTemplate.execute(DRAIN_SCRIPT, List.of(keys.get(i), transitKey),
+                    String.valueOf(stocks[i]), transferId, target + ":" + stocks[i]);
+            if (drained != null && drained > 0) {
+                deliver(voucherId, transitKey, transferId, target, drained);
+                log.debug("分桶库存再平衡，券ID: {}, 桶{} -> 桶{}, 数量: {}", voucherId, i, target, drained);
+            }
+        }
+    }
+
+    /**
+     * 将在途库存转入目标桶后删除在途记录；目标桶按转移id去重，重复补发不会重复增加库存
+     */
+    private void deliver(Long voucherId, String transitKey, String transferId, int target, long amount) {
+        stringRedisTemplate.execute(RECEIVE_SCRIPT, List.of(stockKey(voucherId, target), receivedKey(voucherId, target)),
+                transferId, String.valueOf(amount), String.valueOf(RECEIVED_TTL_SECONDS));
+        stringRedisTemplate.opsForHash().delete(transitKey, transferId);
+    }
+
+    /**
+     * 其他节点变更了某张券的桶数量，重新加载
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Long voucherId = Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8));
+        Object count = stringRedisTemplate.opsForHash().get(RedisConstants.SECKILL_BUCKETS_KEY, voucherId.toString());
+        if (count == null) {
+            bucketCounts.remove(voucherId);
+        } else {
+            bucketCounts.put(voucherId, Integer.valueOf(count.toString()));
+        }
+    }
+}
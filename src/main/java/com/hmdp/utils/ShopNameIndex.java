@@ -0,0 +1,309 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 商铺名称的进程内倒排索引 - 对商铺名称和商圈按单字和相邻两字（n-gram）切分，适用于不分词的中文名称
+ * 查询时取关键字的n-gram倒排表求交集，再校验名称或商圈确实包含关键字，按评分、销量排序后分页
+ * 启动时按主键游标从tb_shop流式构建；商铺新增或修改后通过发布订阅通知所有节点从数据库重新加载该商铺
+ */
+@Slf4j
+@Component
+public class ShopNameIndex implements MessageListener {
+
+    private static final int LOAD_PAGE_SIZE = 1000;
+
+    /**
+     * 排序：评分降序，销量降序，ID升序
+     */
+    private static final Comparator<Doc> RANK = Comparator.comparingInt(Doc::score).reversed()
+            .thenComparing(Comparator.comparingInt(Doc::sold).reversed())
+            .thenComparingLong(Doc::id);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ShopMapper shopMapper;
+    private final boolean enabled;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Long, Doc> docs = new HashMap<>();//商铺ID -> 索引的文档
+    private Map<String, Set<Long>> postings = new HashMap<>();//n-gram -> 商铺ID
+
+    public ShopNameIndex(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer container, ShopMapper shopMapper,
+                         @Value("${hmdp.shop.name-index.enabled:true}") boolean enabled) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.shopMapper = shopMapper;
+        this.enabled = enabled;
+        if (enabled) {
+            container.addMessageListener(this, new ChannelTopic(RedisConstants.SHOP_NAME_CHANNEL));
+        }
+    }
+
+    /**
+     * 索引的文档，名称和商圈已转为小写
+     */
+    private record Doc(long id, String name, String area, int score, int sold) {
+    }
+
+    /**
+     * 分页查询结果：当前页的商铺ID（按排名）和匹配总数
+     */
+    public record Page(List<Long> ids, int total) {
+    }
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 从数据库全量重建索引，构建完成后整体替换
+     *
+     * @return 索引的商铺数量
+     */
+    public int rebuild() {
+        long begin = System.currentTimeMillis();
+        Map<Long, Doc> newDocs = new HashMap<>();
+        Map<String, Set<Long>> newPostings = new HashMap<>();
+        long lastId = 0;
+        while (true) {
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .select("id", "name", "area", "score", "sold").gt("id", lastId)
+                    .orderByAsc("id").last("LIMIT " + LOAD_PAGE_SIZE));
+            for (Shop shop : shops) {
+                lastId = shop.getId();
+                Doc doc = toDoc(shop);
+                newDocs.put(doc.id(), doc);
+                for (String gram : grams(doc)) {
+                    newPostings.computeIfAbsent(gram, k -> new HashSet<>()).add(doc.id());
+                }
+            }
+            if (shops.size() < LOAD_PAGE_SIZE) {
+                break;
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            docs = newDocs;
+            postings = newPostings;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("商铺名称索引构建完成，商铺数量: {}，词项数量: {}，耗时: {}ms",
+                newDocs.size(), newPostings.size(), System.currentTimeMillis() - begin);
+        return newDocs.size();
+    }
+
+    /**
+     * 商铺新增或修改后调用，更新本节点索引并通知其他节点
+     *
+     * @param shopId 商铺ID
+     */
+    public void refresh(Long shopId) {
+        if (!enabled) {
+            return;
+        }
+        reload(shopId);
+        stringRedisTemplate.convertAndSend(RedisConstants.SHOP_NAME_CHANNEL, shopId.toString());
+    }
+
+    private void reload(Long shopId) {
+        Shop shop = shopMapper.selectOne(new QueryWrapper<Shop>()
+                .select("id", "name", "area", "score", "sold").eq("id", shopId));
+        lock.writeLock().lock();
+        try {
+            //1.删除旧文档的倒排项
+            Doc old = docs.remove(shopId);
+            if (old != null) {
+                for (String gram : grams(old)) {
+                    Set<Long> ids = postings.get(gram);
+                    if (ids != null && ids.remove(shopId) && ids.isEmpty()) {
+                        postings.remove(gram);
+                    }
+                }
+            }
+            //2.写入新文档
+            if (shop != null) {
+                Doc doc = toDoc(shop);
+                docs.put(shopId, doc);
+                for (String gram : grams(doc)) {
+                    postings.computeIfAbsent(gram, k -> new HashSet<>()).add(shopId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按关键字分页查询，多个关键字以空格分隔，要求全部匹配
+     *
+     * @param keyword  关键字，匹配名称或商圈
+     * @param current  页码，从1开始
+     * @param pageSize 每页数量
+     * @return 当前页的商铺ID和匹配总数
+     */
+    public Page search(String keyword, int current, int pageSize) {
+        List<String> terms = new ArrayList<>();
+        for (String term : keyword.toLowerCase().trim().split("\\s+")) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        if (terms.isEmpty()) {
+            return new Page(List.of(), 0);
+        }
+        //页码很大时乘积会溢出int，按long计算，超过匹配总数时返回空页
+        long from = (long) (Math.max(current, 1) - 1) * pageSize;
+        long end = from + pageSize;
+        lock.readLock().lock();
+        try {
+            //1.取所有关键字n-gram的倒排表，从最短的开始求交集
+            List<Set<Long>> lists = new ArrayList<>();
+            for (String term : terms) {
+                for (String gram : queryGrams(term)) {
+                    Set<Long> ids = postings.get(gram);
+                    if (ids == null) {
+                        return new Page(List.of(), 0);
+                    }
+                    lists.add(ids);
+                }
+            }
+            lists.sort(Comparator.comparingInt(Set::size));
+            //2.校验名称或商圈包含关键字，用大小为end的堆保留排名最高的文档
+            PriorityQueue<Doc> top = new PriorityQueue<>(RANK.reversed());
+            int total = 0;
+            outer:
+            for (Long id : lists.get(0)) {
+                for (int i = 1; i < lists.size(); i++) {
+                    if (!lists.get(i).contains(id)) {
+                        continue outer;
+                    }
+                }
+                Doc doc = docs.get(id);
+                for (String term : terms) {
+                    if (!doc.name().contains(term) && !doc.area().contains(term)) {
+                        continue outer;
+                    }
+                }
+                total++;
+                top.offer(doc);
+                if (top.size() > end) {
+                    top.poll();
+                }
+            }
+            //3.取出当前页
+            if (from >= total) {
+                return new Page(List.of(), total);
+            }
+            List<Doc> ranked = new ArrayList<>(top);
+            ranked.sort(RANK);
+            List<Long> ids = new ArrayList<>(pageSize);
+            for (int i = (int) from; i < ranked.size(); i++) {
+                ids.add(ranked.get(i).id());
+            }
+            return new Page(ids, total);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            stats.put("enabled", enabled);
+            stats.put("shops", docs.size());
+            stats.put("grams", postings.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+        return stats;
+    }
+
+    /**
+     * 接收其他节点的商铺变更通知，消息内容为商铺ID
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            reload(Long.valueOf(body));
+        } catch (NumberFormatException e) {
+            log.warn("无法解析的商铺名称变更消息: {}", body);
+        }
+    }
+
+    private static Doc toDoc(Shop shop) {
+        return new Doc(shop.getId(),
+                StrUtil.nullToEmpty(shop.getName()).toLowerCase(),
+                StrUtil.nullToEmpty(shop.getArea()).toLowerCase(),
+                shop.getScore() == null ? 0 : shop.getScore(),
+                shop.getSold() == null ? 0 : shop.getSold());
+    }
+
+    /**
+     * 文档的所有n-gram：名称和商圈的单字及相邻两字
+     */
+    private static Set<String> grams(Doc doc) {
+        Set<String> grams = new HashSet<>();
+        for (String text : new String[]{doc.name(), doc.area()}) {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    continue;
+                }
+                grams.add(String.valueOf(c));
+                if (i + 1 < text.length() && !Character.isWhitespace(text.charAt(i + 1))) {
+                    grams.add(text.substring(i, i + 2));
+                }
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * 关键字用于查询的n-gram：单字关键字取单字，否则取所有相邻两字
+     */
+    private static Set<String> queryGrams(String term) {
+        Set<String> grams = new LinkedHashSet<>();
+        if (term.length() == 1) {
+            grams.add(term);
+            return grams;
+        }
+        for (int i = 0; i + 1 < term.length(); i++) {
+            grams.add(term.substring(i, i + 2));
+        }
+        return grams;
+    }
+}
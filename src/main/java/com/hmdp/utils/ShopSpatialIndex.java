@@ -0,0 +1,386 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 商铺坐标的进程内空间索引 - 按商铺类型划分，每个类型一个网格索引，支持半径查询和K近邻查询，不访问网络
+ * 坐标、ID保存在基本类型数组中，网格按固定边长（度）划分，查询时只计算覆盖范围内网格中的商铺距离
+ * 启动时按主键游标从tb_shop流式构建；商铺新增或修改后通过发布订阅通知所有节点从数据库重新加载该商铺
+ */
+@Slf4j
+@Component
+public class ShopSpatialIndex implements MessageListener {
+
+    private static final double METERS_PER_DEGREE = 111_320;
+    private static final double EARTH_RADIUS = 6_371_000;
+    private static final int LOAD_PAGE_SIZE = 1000;
+    private static final int SLOT_BITS = 24;//排序时槽位号占用的低位，单个类型最多约1600万个商铺
+    private static final long SLOT_MASK = (1L << SLOT_BITS) - 1;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ShopMapper shopMapper;
+    private final boolean enabled;
+    private final double cellDegrees;//网格边长（度）
+    private volatile Map<Long, Grid> grids = new ConcurrentHashMap<>();//类型ID -> 网格索引
+
+    public ShopSpatialIndex(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer container, ShopMapper shopMapper,
+                            @Value("${hmdp.shop.spatial-index.enabled:false}") boolean enabled,
+                            @Value("${hmdp.shop.spatial-index.cell-meters:1000}") double cellMeters) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.shopMapper = shopMapper;
+        this.enabled = enabled;
+        this.cellDegrees = cellMeters / METERS_PER_DEGREE;
+        if (enabled) {
+            container.addMessageListener(this, new ChannelTopic(RedisConstants.SHOP_GEO_CHANNEL));
+        }
+    }
+
+    /**
+     * 查询结果：商铺ID和距离（米）
+     */
+    public record Neighbor(long id, double distance) {
+    }
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 从数据库全量重建索引，构建完成后整体替换，构建期间旧索引仍然可用
+     *
+     * @return 索引的商铺数量
+     */
+    public long rebuild() {
+        long begin = System.currentTimeMillis();
+        Map<Long, Grid> newGrids = new ConcurrentHashMap<>();
+        long lastId = 0;
+        long count = 0;
+        while (true) {
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .select("id", "type_id", "x", "y").gt("id", lastId)
+                    .orderByAsc("id").last("LIMIT " + LOAD_PAGE_SIZE));
+            for (Shop shop : shops) {
+                lastId = shop.getId();
+                if (shop.getTypeId() != null && shop.getX() != null && shop.getY() != null) {
+                    newGrids.computeIfAbsent(shop.getTypeId(), k -> new Grid()).upsert(shop.getId(), shop.getX(), shop.getY());
+                    count++;
+                }
+            }
+            if (shops.size() < LOAD_PAGE_SIZE) {
+                break;
+            }
+        }
+        grids = newGrids;
+        log.info("商铺空间索引构建完成，商铺数量: {}，耗时: {}ms", count, System.currentTimeMillis() - begin);
+        return count;
+    }
+
+    /**
+     * 商铺新增或修改后调用，更新本节点索引并通知其他节点
+     *
+     * @param shopId 商铺ID
+     */
+    public void refresh(Long shopId) {
+        if (!enabled) {
+            return;
+        }
+        reload(shopId);
+        stringRedisTemplate.convertAndSend(RedisConstants.SHOP_GEO_CHANNEL, shopId.toString());
+    }
+
+    /**
+     * 从数据库重新加载一个商铺的坐标，类型变化时从原类型的索引中移除
+     */
+    private void reload(Long shopId) {
+        Shop shop = shopMapper.selectOne(new QueryWrapper<Shop>().select("id", "type_id", "x", "y").eq("id", shopId));
+        Map<Long, Grid> current = grids;
+        for (Map.Entry<Long, Grid> entry : current.entrySet()) {
+            if (shop == null || !entry.getKey().equals(shop.getTypeId())) {
+                entry.getValue().remove(shopId);
+            }
+        }
+        if (shop != null && shop.getTypeId() != null && shop.getX() != null && shop.getY() != null) {
+            current.computeIfAbsent(shop.getTypeId(), k -> new Grid()).upsert(shopId, shop.getX(), shop.getY());
+        }
+    }
+
+    /**
+     * 半径查询，按距离由近到远排序
+     *
+     * @param typeId 商铺类型ID
+     * @param x      经度
+     * @param y      纬度
+     * @param radius 半径（米）
+     * @param limit  最多返回的数量
+     * @return 半径内的商铺
+     */
+    public List<Neighbor> searchRadius(long typeId, double x, double y, double radius, int limit) {
+        Grid grid = grids.get(typeId);
+        return grid == null ? List.of() : grid.searchRadius(x, y, radius, limit);
+    }
+
+    /**
+     * K近邻查询：从一个网格边长开始搜索，结果不足k个时半径加倍，直到达到最大半径
+     *
+     * @param typeId    商铺类型ID
+     * @param x         经度
+     * @param y         纬度
+     * @param k         返回的数量
+     * @param maxRadius 最大搜索半径（米）
+     * @return 最近的k个商铺，按距离由近到远排序
+     */
+    public List<Neighbor> nearest(long typeId, double x, double y, int k, double maxRadius) {
+        Grid grid = grids.get(typeId);
+        if (grid == null) {
+            return List.of();
+        }
+        double radius = Math.min(cellDegrees * METERS_PER_DEGREE, maxRadius);
+        while (true) {
+            List<Neighbor> result = grid.searchRadius(x, y, radius, k);
+            if (result.size() >= k || radius >= maxRadius) {
+                return result;
+            }
+            radius = Math.min(radius * 2, maxRadius);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        Map<Long, Integer> sizes = new HashMap<>();
+        grids.forEach((typeId, grid) -> sizes.put(typeId, grid.size()));
+        stats.put("shopsOfType", sizes);
+        return stats;
+    }
+
+    /**
+     * 接收其他节点的商铺变更通知，消息内容为商铺ID
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            reload(Long.valueOf(body));
+        } catch (NumberFormatException e) {
+            log.warn("无法解析的商铺坐标变更消息: {}", body);
+        }
+    }
+
+    /**
+     * 两点间的球面距离（米）
+     */
+    static double haversine(double x1, double y1, double x2, double y2) {
+        double dLat = Math.toRadians(y2 - y1);
+        double dLon = Math.toRadians(x2 - x1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(y1)) * Math.cos(Math.toRadians(y2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(a));
+    }
+
+    /**
+     * 单个类型的网格索引
+     * 商铺保存在并列的基本类型数组中（槽位），每个网格保存其中商铺的槽位号；删除时用最后一个槽位填补空位
+     */
+    private final class Grid {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private long[] ids = new long[16];
+        private double[] xs = new double[16];
+        private double[] ys = new double[16];
+        private long[] cellOf = new long[16];//槽位所在的网格
+        private int size;
+        private final Map<Long, Integer> slotOf = new HashMap<>();//商铺ID -> 槽位
+        private final Map<Long, Cell> cells = new HashMap<>();//网格坐标 -> 网格
+
+        private long cellKey(double x, double y) {
+            return cellKey((int) Math.floor(x / cellDegrees), (int) Math.floor(y / cellDegrees));
+        }
+
+        private long cellKey(int cx, int cy) {
+            return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+        }
+
+        private int size() {
+            lock.readLock().lock();
+            try {
+                return size;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void upsert(long id, double x, double y) {
+            lock.writeLock().lock();
+            try {
+                removeSlot(id);
+                if (size == ids.length) {
+                    int capacity = size << 1;
+                    ids = Arrays.copyOf(ids, capacity);
+                    xs = Arrays.copyOf(xs, capacity);
+                    ys = Arrays.copyOf(ys, capacity);
+                    cellOf = Arrays.copyOf(cellOf, capacity);
+                }
+                int slot = size++;
+                long key = cellKey(x, y);
+                ids[slot] = id;
+                xs[slot] = x;
+                ys[slot] = y;
+                cellOf[slot] = key;
+                slotOf.put(id, slot);
+                cells.computeIfAbsent(key, k -> new Cell()).add(slot);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void remove(long id) {
+            lock.writeLock().lock();
+            try {
+                removeSlot(id);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void removeSlot(long id) {
+            Integer slot = slotOf.remove(id);
+            if (slot == null) {
+                return;
+            }
+            Cell cell = cells.get(cellOf[slot]);
+            cell.remove(slot);
+            if (cell.size == 0) {
+                cells.remove(cellOf[slot]);
+            }
+            int last = --size;
+            if (slot != last) {
+                //最后一个槽位移到空出的位置，更新其所在网格中的槽位号
+                ids[slot] = ids[last];
+                xs[slot] = xs[last];
+                ys[slot] = ys[last];
+                cellOf[slot] = cellOf[last];
+                slotOf.put(ids[slot], slot);
+                cells.get(cellOf[slot]).replace(last, slot);
+            }
+        }
+
+        private List<Neighbor> searchRadius(double x, double y, double radius, int limit) {
+            //1.计算覆盖半径的网格范围，经度方向按纬度收缩
+            double dLat = radius / METERS_PER_DEGREE;
+            double dLon = radius / (METERS_PER_DEGREE * Math.max(Math.cos(Math.toRadians(y)), 1e-6));
+            int minCx = (int) Math.floor((x - dLon) / cellDegrees);
+            int maxCx = (int) Math.floor((x + dLon) / cellDegrees);
+            int minCy = (int) Math.floor((y - dLat) / cellDegrees);
+            int maxCy = (int) Math.floor((y + dLat) / cellDegrees);
+            lock.readLock().lock();
+            try {
+                //2.找出范围内的非空网格，范围内的网格数多于非空网格数时直接遍历非空网格
+                List<Cell> candidates = new ArrayList<>();
+                if ((long) (maxCx - minCx + 1) * (maxCy - minCy + 1) > cells.size()) {
+                    cells.forEach((key, cell) -> {
+                        int cx = (int) (key >> 32);
+                        int cy = (int) (long) key;
+                        if (cx >= minCx && cx <= maxCx && cy >= minCy && cy <= maxCy) {
+                            candidates.add(cell);
+                        }
+                    });
+                } else {
+                    for (int cx = minCx; cx <= maxCx; cx++) {
+                        for (int cy = minCy; cy <= maxCy; cy++) {
+                            Cell cell = cells.get(cellKey(cx, cy));
+                            if (cell != null) {
+                                candidates.add(cell);
+                            }
+                        }
+                    }
+                }
+                //3.计算距离，半径内的商铺编码为 距离(毫米)<<24 | 槽位，排序后即为由近到远
+                int count = 0;
+                long[] hits = new long[16];
+                for (Cell cell : candidates) {
+                    for (int i = 0; i < cell.size; i++) {
+                        int slot = cell.slots[i];
+                        double d = haversine(x, y, xs[slot], ys[slot]);
+                        if (d <= radius) {
+                            if (count == hits.length) {
+                                hits = Arrays.copyOf(hits, count << 1);
+                            }
+                            hits[count++] = (Math.round(d * 1000) << SLOT_BITS) | slot;
+                        }
+                    }
+                }
+                Arrays.sort(hits, 0, count);
+                //4.取前limit个
+                int n = Math.min(count, limit);
+                List<Neighbor> result = new ArrayList<>(n);
+                for (int i = 0; i < n; i++) {
+                    int slot = (int) (hits[i] & SLOT_MASK);
+                    result.add(new Neighbor(ids[slot], (hits[i] >>> SLOT_BITS) / 1000.0));
+                }
+                return result;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 网格：保存其中商铺的槽位号
+     */
+    private static final class Cell {
+        private int[] slots = new int[4];
+        private int size;
+
+        private void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size << 1);
+            }
+            slots[size++] = slot;
+        }
+
+        private void remove(int slot) {
+            for (int i = 0; i < size; i++) {
+                if (slots[i] == slot) {
+                    slots[i] = slots[--size];
+                    return;
+                }
+            }
+        }
+
+        private void replace(int oldSlot, int newSlot) {
+            for (int i = 0; i < size; i++) {
+                if (slots[i] == oldSlot) {
+                    slots[i] = newSlot;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.dto.UserDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无状态访问令牌 - 登录时签发HMAC-SHA256签名的令牌，令牌中包含用户ID、昵称、头像、过期时间和令牌ID，校验时不访问Redis
+ * 令牌格式：Base64URL(载荷) + "." + Base64URL(签名)，不含"."的令牌为Redis会话的随机token
+ * 访问令牌有效期较短，过期后用保存在Redis中的刷新令牌 login:refresh:{refreshToken} 换取新的令牌，刷新令牌只能使用一次
+ * 登出时将令牌ID写入吊销集合 login:revoked（分数为令牌过期时间），各节点在本地布隆过滤器中判断令牌是否可能被吊销，
+ * 只有布隆过滤器判定可能吊销时才查询Redis确认；已过期的吊销记录定时清理并重建布隆过滤器
+ */
+@Slf4j
+@Component
+public class StatelessTokens implements MessageListener {
+
+    private static final String HMAC = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final boolean enabled;
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+
+    @Value("${hmdp.login.token.access-ttl-minutes:15}")
+    private long accessTtlMinutes;//访问令牌有效期
+    @Value("${hmdp.login.token.refresh-ttl-days:7}")
+    private long refreshTtlDays;//刷新令牌有效期
+    @Value("${hmdp.login.token.revocation-rebuild-minutes:10}")
+    private long revocationRebuildMinutes;//清理过期吊销记录并重建布隆过滤器的间隔
+
+    private final long bloomBits;
+    private final int bloomHashes;
+    private volatile AtomicLongArray revokedBits;//本节点的吊销布隆过滤器
+    private ScheduledExecutorService rebuildExecutor;
+
+    //校验统计
+    private final LongAdder verified = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder revocationChecks = new LongAdder();//布隆过滤器判定可能吊销，查询Redis确认的次数
+    private final LongAdder revocationFalsePositives = new LongAdder();
+
+    public StatelessTokens(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer container,
+                           @Value("${hmdp.login.mode:session}") String mode,
+                           @Value("${hmdp.login.token.secret:}") String secret,
+                           @Value("${hmdp.login.token.revocation-expected:100000}") long expectedRevocations,
+                           @Value("${hmdp.login.token.revocation-fpp:0.001}") double fpp) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.enabled = "stateless".equalsIgnoreCase(mode);
+        byte[] keyBytes;
+        if (StrUtil.isBlank(secret)) {
+            //未配置密钥时使用随机密钥，只适用于单节点，重启后已签发的令牌全部失效
+            keyBytes = new byte[32];
+            RANDOM.nextBytes(keyBytes);
+            if (enabled) {
+                log.warn("未配置 hmdp.login.token.secret，使用随机密钥签发令牌");
+            }
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(keyBytes, HMAC);
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(HMAC);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        // m = -n*ln(p)/(ln2)^2，按64位对齐；k = m/n*ln2
+        long bits = (long) Math.ceil(-expectedRevocations * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.bloomBits = Math.max(64, (bits + 63) / 64 * 64);
+        this.bloomHashes = Math.max(1, (int) Math.round((double) bloomBits / expectedRevocations * Math.log(2)));
+        this.revokedBits = new AtomicLongArray((int) (bloomBits / 64));
+        if (enabled) {
+            container.addMessageListener(this, new ChannelTopic(RedisConstants.LOGIN_REVOKED_CHANNEL));
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        rebuildRevocations();
+        rebuildExecutor = Executors.newSingleThreadScheduledExecutor();
+        rebuildExecutor.scheduleWithFixedDelay(this::rebuildRevocations,
+                revocationRebuildMinutes, revocationRebuildMinutes, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (rebuildExecutor != null) {
+            rebuildExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 登录时是否签发无状态令牌
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 是否为无状态令牌（Redis会话的token不含"."）
+     */
+    public static boolean isStateless(String token) {
+        return token.indexOf('.') > 0;
+    }
+
+    /**
+     * 签发访问令牌和刷新令牌
+     *
+     * @param userDTO 用户
+     * @return token：访问令牌，refreshToken：刷新令牌，expiresIn：访问令牌有效期（秒）
+     */
+    public Map<String, Object> issue(UserDTO userDTO) {
+        String refreshToken = UUID.randomUUID().toString(true);
+        stringRedisTemplate.opsForValue().set(RedisConstants.LOGIN_REFRESH_KEY + refreshToken,
+                userDTO.getId().toString(), refreshTtlDays, TimeUnit.DAYS);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("token", sign(userDTO, System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(accessTtlMinutes)));
+        result.put("refreshToken", refreshToken);
+        result.put("expiresIn", TimeUnit.MINUTES.toSeconds(accessTtlMinutes));
+        return result;
+    }
+
+    /**
+     * 生成签名的访问令牌
+     *
+     * @param userDTO  用户
+     * @param expireAt 过期时间戳（毫秒）
+     * @return 访问令牌
+     */
+    public String sign(UserDTO userDTO, long expireAt) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(RANDOM.nextLong());
+            out.writeLong(expireAt);
+            out.writeLong(userDTO.getId());
+            out.writeUTF(StrUtil.nullToEmpty(userDTO.getNickName()));
+            out.writeUTF(StrUtil.nullToEmpty(userDTO.getIcon()));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] payload = bytes.toByteArray();
+        return ENCODER.encodeToString(payload) + "." + ENCODER.encodeToString(macs.get().doFinal(payload));
+    }
+
+    /**
+     * 校验访问令牌，正常情况下不访问Redis
+     *
+     * @param token 访问令牌
+     * @return 用户，签名错误、已过期或已吊销时返回null
+     */
+    public UserDTO verify(String token) {
+        //未开启时不维护吊销过滤器，无法判断令牌是否已吊销，一律拒绝
+        Claims claims = enabled ? parse(token) : null;
+        if (claims == null || claims.expireAt <= System.currentTimeMillis() || isRevoked(claims.tokenId)) {
+            rejected.increment();
+            return null;
+        }
+        verified.increment();
+        return claims.user;
+    }
+
+    /**
+     * 用刷新令牌换取用户ID，刷新令牌使用后立即删除
+     *
+     * @param refreshToken 刷新令牌
+     * @return 用户ID，刷新令牌不存在或已过期时返回null
+     */
+    public Long consumeRefreshToken(String refreshToken) {
+        String userId = stringRedisTemplate.opsForValue().getAndDelete(RedisConstants.LOGIN_REFRESH_KEY + refreshToken);
+        return userId == null ? null : Long.valueOf(userId);
+    }
+
+    /**
+     * 登出：吊销访问令牌直到其过期，并删除刷新令牌
+     *
+     * @param token        访问令牌
+     * @param refreshToken 刷新令牌，可为空
+     */
+    public void revoke(String token, String refreshToken) {
+        if (StrUtil.isNotBlank(refreshToken)) {
+            stringRedisTemplate.delete(RedisConstants.LOGIN_REFRESH_KEY + refreshToken);
+        }
+        Claims claims = parse(token);
+        if (claims == null || claims.expireAt <= System.currentTimeMillis()) {
+            return;
+        }
+        //先写入吊销集合再通知，保证收到通知或重建布隆过滤器时都能读到该记录
+        stringRedisTemplate.opsForZSet().add(RedisConstants.LOGIN_REVOKED_KEY, Long.toString(claims.tokenId), claims.expireAt);
+        addRevoked(revokedBits, claims.tokenId);
+        stringRedisTemplate.convertAndSend(RedisConstants.LOGIN_REVOKED_CHANNEL, Long.toString(claims.tokenId));
+    }
+
+    /**
+     * 清理已过期的吊销记录，并从吊销集合重建本节点的布隆过滤器
+     * 替换后再读取一次吊销集合，补上重建期间其他节点吊销的令牌（这些令牌的通知可能已写入旧的过滤器）
+     */
+    public void rebuildRevocations() {
+        try {
+            long now = System.currentTimeMillis();
+            stringRedisTemplate.opsForZSet().removeRangeByScore(RedisConstants.LOGIN_REVOKED_KEY, 0, now);
+            AtomicLongArray bits = new AtomicLongArray((int) (bloomBits / 64));
+            loadRevocations(bits, now);
+            revokedBits = bits;
+            loadRevocations(bits, now);
+        } catch (Exception e) {
+            log.error("重建令牌吊销布隆过滤器失败", e);
+        }
+    }
+
+    private void loadRevocations(AtomicLongArray bits, long now) {
+        Set<String> tokenIds = stringRedisTemplate.opsForZSet().rangeByScore(RedisConstants.LOGIN_REVOKED_KEY, now, Double.MAX_VALUE);
+        if (tokenIds != null) {
+            for (String tokenId : tokenIds) {
+                addRevoked(bits, Long.parseLong(tokenId));
+            }
+        }
+    }
+
+    private boolean isRevoked(long tokenId) {
+        //1.布隆过滤器判定不存在，一定未吊销
+        AtomicLongArray bits = revokedBits;
+        long hash1 = mix64(tokenId);
+        long hash2 = mix64(hash1 ^ 0x9E3779B97F4A7C15L);
+        for (int i = 1; i <= bloomHashes; i++) {
+            long offset = Math.floorMod(hash1 + i * hash2, bloomBits);
+            if ((bits.get((int) (offset >>> 6)) & (1L << (offset & 63))) == 0) {
+                return false;
+            }
+        }
+        //2.可能吊销，查询吊销集合确认
+        revocationChecks.increment();
+        if (stringRedisTemplate.opsForZSet().score(RedisConstants.LOGIN_REVOKED_KEY, Long.toString(tokenId)) != null) {
+            return true;
+        }
+        revocationFalsePositives.increment();
+        return false;
+    }
+
+    private void addRevoked(AtomicLongArray bits, long tokenId) {
+        long hash1 = mix64(tokenId);
+        long hash2 = mix64(hash1 ^ 0x9E3779B97F4A7C15L);
+        for (int i = 1; i <= bloomHashes; i++) {
+            long offset = Math.floorMod(hash1 + i * hash2, bloomBits);
+            int index = (int) (offset >>> 6);
+            long mask = 1L << (offset & 63);
+            long old;
+            do {
+                old = bits.get(index);
+                if ((old & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(index, old, old | mask));
+        }
+    }
+
+    /**
+     * 令牌载荷
+     */
+    private record Claims(long tokenId, long expireAt, UserDTO user) {
+    }
+
+    /**
+     * 校验签名并解析载荷
+     *
+     * @return 签名错误或格式错误时返回null
+     */
+    private Claims parse(String token) {
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        try {
+            byte[] payload = DECODER.decode(token.substring(0, dot));
+            byte[] signature = DECODER.decode(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(signature, macs.get().doFinal(payload))) {
+                return null;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            long tokenId = in.readLong();
+            long expireAt = in.readLong();
+            UserDTO userDTO = new UserDTO();
+            userDTO.setId(in.readLong());
+            userDTO.setNickName(in.readUTF());
+            userDTO.setIcon(in.readUTF());
+            return new Claims(tokenId, expireAt, userDTO);
+        } catch (IllegalArgumentException | IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 接收其他节点的吊销通知，消息内容为令牌ID
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        try {
+            addRevoked(revokedBits, Long.parseLong(body));
+        } catch (NumberFormatException e) {
+            log.warn("无法解析的令牌吊销消息: {}", body);
+        }
+    }
+
+    /**
+     * 查询令牌校验统计
+     *
+     * @return 校验通过和拒绝的次数、查询吊销集合的次数和布隆过滤器误判次数
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("verified", verified.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("revocationChecks", revocationChecks.sum());
+        stats.put("revocationFalsePositives", revocationFalsePositives.sum());
+        stats.put("revokedTokens", stringRedisTemplate.opsForZSet().zCard(RedisConstants.LOGIN_REVOKED_KEY));
+        stats.put("bloomBits", bloomBits);
+        stats.put("bloomHashes", bloomHashes);
+        return stats;
+    }
+
+    /**
+     * MurmurHash3的64位混淆函数
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
@@ -9,4 +9,6 @@ public class SystemConstants {
     public static final String USER_NICK_NAME_PREFIX = "user_";
     public static final int DEFAULT_PAGE_SIZE = 5;
     public static final int MAX_PAGE_SIZE = 10;
+    public static final double DEFAULT_SEARCH_RADIUS = 5000;//附近商铺默认搜索半径（米）
+    public static final double MAX_SEARCH_RADIUS = 50000;//附近商铺最大搜索半径（米）
 }
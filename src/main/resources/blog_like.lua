@@ -0,0 +1,27 @@
+-- 点赞或取消点赞：一次调用完成判断、修改点赞集合、累加待写回数据库的点赞数、更新热门排行
+-- KEYS[1]=点赞集合 blog:liked:{id} KEYS[2]=待写回的点赞数 blog:like:dirty
+-- KEYS[3]=最早未写回的时间 blog:like:dirty:since KEYS[4]=热门排行 blog:hot
+-- ARGV[1]=博客id ARGV[2]=用户id ARGV[3]=当前时间戳(毫秒)
+-- 返回1表示点赞，0表示取消点赞
+local blogId = ARGV[1]
+local userId = ARGV[2]
+local now = ARGV[3]
+
+-- 1.判断用户是否已点赞，已点赞则取消，否则点赞
+local delta
+if(redis.call('zscore', KEYS[1], userId) == false) then
+    redis.call('zadd', KEYS[1], now, userId)
+    delta = 1
+else
+    redis.call('zrem', KEYS[1], userId)
+    delta = -1
+end
+-- 2.累加待写回的点赞数，记录最早未写回的时间用于统计写回延迟
+redis.call('hincrby', KEYS[2], blogId, delta)
+redis.call('set', KEYS[3], now, 'NX')
+-- 3.更新热门排行
+redis.call('zincrby', KEYS[4], delta, blogId)
+if(delta > 0) then
+    return 1
+end
+return 0
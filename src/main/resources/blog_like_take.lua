@@ -0,0 +1,27 @@
+-- 取出待写回的点赞数：将 blog:like:dirty 整体改名为 blog:like:flushing，之后的点赞累加到新的dirty中
+-- KEYS[1]=blog:like:dirty KEYS[2]=blog:like:dirty:since KEYS[3]=blog:like:flushing KEYS[4]=blog:like:flushing:since
+-- KEYS[5]=blog:like:flushing:id KEYS[6]=blog:like:flush:seq
+-- 每个批次分配一个递增的批次号，写回时按 批次号+博客ID 去重，重试同一批次不会重复累加
+-- 返回flushing的批次号，0表示没有待写回的数据
+-- 1.上一批还未写回完成（节点宕机），先继续上一批
+if(redis.call('exists', KEYS[3]) == 1) then
+    local id = redis.call('get', KEYS[5])
+    if(not id) then
+        id = redis.call('incr', KEYS[6])
+        redis.call('set', KEYS[5], id)
+    end
+    return tonumber(id)
+end
+if(redis.call('exists', KEYS[1]) == 0) then
+    return 0
+end
+-- 2.取出当前批次
+redis.call('rename', KEYS[1], KEYS[3])
+local since = redis.call('get', KEYS[2])
+redis.call('del', KEYS[2])
+if(since) then
+    redis.call('set', KEYS[4], since)
+end
+local id = redis.call('incr', KEYS[6])
+redis.call('set', KEYS[5], id)
+return id
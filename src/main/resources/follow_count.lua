@@ -0,0 +1,10 @@
+-- 关注或取消关注后修改关注数和粉丝数，计数未加载（字段不存在）时不修改，由下次查询时从数据库加载
+-- KEYS[1]=关注者的计数 follow:count:{userId} KEYS[2]=被关注者的计数 follow:count:{followUserId}
+-- ARGV[1]=增量，关注为1，取消关注为-1
+if(redis.call('hexists', KEYS[1], 'following') == 1) then
+    redis.call('hincrby', KEYS[1], 'following', ARGV[1])
+end
+if(redis.call('hexists', KEYS[2], 'followers') == 1) then
+    redis.call('hincrby', KEYS[2], 'followers', ARGV[1])
+end
+return 0
@@ -0,0 +1,9 @@
+-- 加载用户的关注集合：集合不存在时才写入，已存在说明其他请求已加载或已被关注操作修改，不能用旧快照合并
+-- KEYS[1]=关注集合 follow:{userId}
+-- ARGV=占位成员和从数据库读取的关注的人
+-- 返回1表示写入，0表示集合已存在
+if(redis.call('exists', KEYS[1]) == 1) then
+    return 0
+end
+redis.call('sadd', KEYS[1], unpack(ARGV))
+return 1
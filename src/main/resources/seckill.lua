@@ -17,8 +17,12 @@ local streamKey = 'stream.orders'
 -- 3.脚本业务
 -- 3.1.判断库存是否充足 get stockKey
 local stock = redis.call('get', stockKey)
--- 检查库存是否存在且大于0
-if(stock == false or stock == nil or tonumber(stock) == nil or tonumber(stock) <= 0) then
+-- 库存key不存在（尚未预热或被淘汰），返回3，与售罄区分开
+if(stock == false or stock == nil) then
+    return 3
+end
+-- 检查库存是否大于0
+if(tonumber(stock) == nil or tonumber(stock) <= 0) then
     -- 3.2.库存不足，返回1
     return 1
 end
@@ -0,0 +1,11 @@
+-- 取出一个桶的全部剩余库存，仅当库存仍等于预期值时才执行，避免与并发扣减冲突
+-- 取出的库存记入本桶的在途记录，转入目标桶后才删除，节点在两步之间宕机时由下次再平衡补发
+-- KEYS[1]=桶的库存key KEYS[2]=桶的在途记录 seckill:transit:{voucherId:bucket}，二者在同一个slot
+-- ARGV[1]=预期库存 ARGV[2]=转移id ARGV[3]=在途记录的值：目标桶:数量
+local stock = redis.call('get', KEYS[1])
+if(stock == false or stock ~= ARGV[1]) then
+    return 0
+end
+redis.call('set', KEYS[1], 0)
+redis.call('hset', KEYS[2], ARGV[2], ARGV[3])
+return tonumber(ARGV[1])
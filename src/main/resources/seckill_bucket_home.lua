@@ -0,0 +1,19 @@
+-- 分桶库存的秒杀脚本（用户所属的桶）：一人一单固定在用户所属的桶中判断
+-- KEYS[1]=桶的库存key seckill:stock:{voucherId:bucket} KEYS[2]=桶的订单key seckill:order:{voucherId:bucket}，二者在同一个slot
+-- ARGV[1]=用户id
+-- 返回 0：扣减成功 2：重复下单 3：本桶库存不足 4：本桶库存key不存在（未加载或被淘汰）
+-- 返回3、4时已在订单集合中预占用户，由调用方继续尝试其他桶，全部失败时移除预占
+if(redis.call('sismember', KEYS[2], ARGV[1]) == 1) then
+    return 2
+end
+redis.call('sadd', KEYS[2], ARGV[1])
+local value = redis.call('get', KEYS[1])
+if(value == false) then
+    return 4
+end
+local stock = tonumber(value)
+if(stock ~= nil and stock > 0) then
+    redis.call('decr', KEYS[1])
+    return 0
+end
+return 3
@@ -0,0 +1,8 @@
+-- 将在途库存转入目标桶，同一个转移id只生效一次，补发时不会重复增加库存
+-- KEYS[1]=目标桶的库存key KEYS[2]=目标桶已接收的转移id集合 seckill:received:{voucherId:bucket}，二者在同一个slot
+-- ARGV[1]=转移id ARGV[2]=数量 ARGV[3]=转移id集合的有效期（秒）
+if(redis.call('sadd', KEYS[2], ARGV[1]) == 1) then
+    redis.call('incrby', KEYS[1], ARGV[2])
+end
+redis.call('expire', KEYS[2], ARGV[3])
+return 0
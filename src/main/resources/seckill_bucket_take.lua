@@ -0,0 +1,13 @@
+-- 从一个桶扣减一件库存，库存不足时不扣减
+-- KEYS[1]=桶的库存key seckill:stock:{voucherId:bucket}
+-- 返回 0：扣减成功 1：库存不足 2：库存key不存在（未加载或被淘汰）
+local value = redis.call('get', KEYS[1])
+if(value == false) then
+    return 2
+end
+local stock = tonumber(value)
+if(stock ~= nil and stock > 0) then
+    redis.call('decr', KEYS[1])
+    return 0
+end
+return 1
@@ -0,0 +1,12 @@
+-- 保存登录会话并设置有效期，一次调用完成原来的 putAll + EXPIRE
+-- KEYS[1]=会话 login:token:{token}
+-- ARGV[1]=有效期（毫秒） ARGV[2]=id ARGV[3]=nickName ARGV[4]=icon，空串表示字段为空，不写入
+redis.call('hset', KEYS[1], 'id', ARGV[2])
+if(ARGV[3] ~= '') then
+    redis.call('hset', KEYS[1], 'nickName', ARGV[3])
+end
+if(ARGV[4] ~= '') then
+    redis.call('hset', KEYS[1], 'icon', ARGV[4])
+end
+redis.call('pexpire', KEYS[1], ARGV[1])
+return 0
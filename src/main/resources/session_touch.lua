@@ -0,0 +1,19 @@
+-- 查询登录会话并按需刷新有效期，一次调用完成原来的 HGETALL + EXPIRE
+-- KEYS[1]=会话 login:token:{token}
+-- ARGV[1]=有效期（毫秒） ARGV[2]=剩余有效期低于该值（毫秒）时才刷新
+-- 返回固定顺序的数组 {id, nickName, icon, 剩余有效期毫秒, 是否刷新}，不存在的字段为空串；会话不存在时返回空数组
+local ttl = redis.call('pttl', KEYS[1])
+if(ttl == -2) then
+    return {}
+end
+local fields = redis.call('hmget', KEYS[1], 'id', 'nickName', 'icon')
+if(not fields[1]) then
+    return {}
+end
+local refreshed = '0'
+if(ttl < tonumber(ARGV[2])) then
+    redis.call('pexpire', KEYS[1], ARGV[1])
+    ttl = tonumber(ARGV[1])
+    refreshed = '1'
+end
+return {fields[1], fields[2] or '', fields[3] or '', tostring(ttl), refreshed}
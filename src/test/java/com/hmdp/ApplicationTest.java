@@ -1,19 +1,60 @@
 package com.hmdp;
 
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.CompressedIdSet;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.LoginSessions;
+import com.hmdp.utils.RedisData;
+import com.hmdp.service.IShopService;
+import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.ShopSpatialIndex;
+import com.hmdp.utils.StatelessTokens;
 import jakarta.annotation.Resource;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.domain.geo.GeoReference;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 @SpringBootTest
 public class ApplicationTest {
 
     @Resource
     private RedisIdWorker redisIdWorker;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ShopSpatialIndex shopSpatialIndex;
+    @Resource
+    private IShopService shopService;
+    @Resource
+    private LoginSessions loginSessions;
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
 
     private ExecutorService es= Executors.newFixedThreadPool(500);
 
@@ -43,4 +84,228 @@ public class ApplicationTest {
         long end = System.currentTimeMillis();
         System.out.println("耗时：" + (end - start));
     }
+
+    /**
+     * 对比每次INCR生成ID与号段分配生成ID的吞吐量(ids/s)
+     */
+    @Test
+    public void testNextIdThroughput() throws InterruptedException {
+        //每次生成ID都访问一次Redis的实现，两种方式使用不同的key，互不影响序列号
+        LongSupplier incrPerCall = () -> {
+            LocalDateTime now = LocalDateTime.now();
+            String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
+            Long count = stringRedisTemplate.opsForValue().increment("icr:bench-incr:" + date);
+            return (now.toEpochSecond(ZoneOffset.UTC) - 1767225600L) << 32 | count;
+        };
+        LongSupplier segment = () -> redisIdWorker.nextId("bench-segment");
+        //预热
+        measureIdsPerSecond(incrPerCall, 10, 1000);
+        measureIdsPerSecond(segment, 10, 1000);
+        System.out.println("INCR per call ids/s = " + measureIdsPerSecond(incrPerCall, 100, 1000));
+        System.out.println("segment       ids/s = " + measureIdsPerSecond(segment, 100, 1000));
+    }
+
+    private long measureIdsPerSecond(LongSupplier generator, int threads, int idsPerThread) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            es.submit(() -> {
+                for (int j = 0; j < idsPerThread; j++) {
+                    generator.getAsLong();
+                }
+                latch.countDown();
+            });
+        }
+        latch.await();
+        long cost = System.nanoTime() - start;
+        return (long) threads * idsPerThread * 1_000_000_000L / cost;
+    }
+
+    /**
+     * 对比缓存编码方式的体积和编解码耗时(ns/op)
+     * 旧方式为RedisData包装后的JSON字符串，命中时需要解析两次
+     */
+    @Test
+    public void testCacheCodec() {
+        Shop shop = new Shop();
+        shop.setId(1L);
+        shop.setName("103茶餐厅");
+        shop.setTypeId(1L);
+        shop.setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg");
+        shop.setArea("大关");
+        shop.setAddress("金华路锦昌文华苑29号");
+        shop.setX(120.149192);
+        shop.setY(30.316078);
+        shop.setAvgPrice(80L);
+        shop.setSold(4215);
+        shop.setComments(3035);
+        shop.setScore(37);
+        shop.setOpenHours("10:00-22:00");
+        shop.setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39));
+        shop.setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+
+        CacheCodec json = new JsonCacheCodec();
+        CacheCodec binary = new BinaryCacheCodec();
+        byte[] jsonBytes = json.encode(shop);
+        byte[] binaryBytes = binary.encode(shop);
+        assertEquals(shop, json.decode(jsonBytes, 0, jsonBytes.length, Shop.class));
+        assertEquals(shop, binary.decode(binaryBytes, 0, binaryBytes.length, Shop.class));
+
+        RedisData redisData = new RedisData();
+        redisData.setData(shop);
+        redisData.setExpireTime(LocalDateTime.now().plusMinutes(30));
+        String legacy = JSONUtil.toJsonStr(redisData);
+        Runnable legacyRoundTrip = () -> {
+            RedisData data = JSONUtil.toBean(JSONUtil.toJsonStr(redisData), RedisData.class);
+            JSONUtil.toBean((JSONObject) data.getData(), Shop.class);
+        };
+        Runnable jsonRoundTrip = () -> {
+            byte[] bytes = json.encode(shop);
+            json.decode(bytes, 0, bytes.length, Shop.class);
+        };
+        Runnable binaryRoundTrip = () -> {
+            byte[] bytes = binary.encode(shop);
+            binary.decode(bytes, 0, bytes.length, Shop.class);
+        };
+        //预热
+        for (Runnable r : new Runnable[]{legacyRoundTrip, jsonRoundTrip, binaryRoundTrip}) {
+            measureNanosPerOp(r, 20000);
+        }
+        System.out.println("RedisData JSON bytes = " + legacy.getBytes(StandardCharsets.UTF_8).length
+                + ", ns/op = " + measureNanosPerOp(legacyRoundTrip, 100000));
+        System.out.println("JSON codec     bytes = " + jsonBytes.length
+                + ", ns/op = " + measureNanosPerOp(jsonRoundTrip, 100000));
+        System.out.println("binary codec   bytes = " + binaryBytes.length
+                + ", ns/op = " + measureNanosPerOp(binaryRoundTrip, 100000));
+    }
+
+    /**
+     * 对比附近商铺查询：Redis GEOSEARCH与进程内网格索引的耗时(ns/op)
+     */
+    @Test
+    public void testNearbyShopSearch() {
+        double x = 120.149192;
+        double y = 30.316078;
+        //加载GEO集合和空间索引
+        shopService.queryShopByType(1, 1, x, y, null);
+        shopSpatialIndex.rebuild();
+        Runnable geo = () -> stringRedisTemplate.opsForGeo().search(
+                RedisConstants.SHOP_GEO_KEY + 1,
+                GeoReference.fromCoordinate(x, y),
+                new Distance(5000, RedisGeoCommands.DistanceUnit.METERS),
+                RedisGeoCommands.GeoSearchCommandArgs.newGeoSearchArgs().includeDistance().sortAscending().limit(10));
+        Runnable index = () -> shopSpatialIndex.searchRadius(1, x, y, 5000, 10);
+        //预热
+        measureNanosPerOp(geo, 1000);
+        measureNanosPerOp(index, 100000);
+        System.out.println("Redis GEOSEARCH ns/op = " + measureNanosPerOp(geo, 10000));
+        System.out.println("spatial index   ns/op = " + measureNanosPerOp(index, 1000000));
+        System.out.println("nearest 10 = " + shopSpatialIndex.nearest(1, x, y, 10, 50000));
+    }
+
+    /**
+     * 对比共同关注求交集：Redis SINTER与进程内压缩位图的耗时(ns/op)
+     */
+    @Test
+    public void testFollowGraphIntersection() {
+        String keyA = "test:follow:a";
+        String keyB = "test:follow:b";
+        stringRedisTemplate.delete(List.of(keyA, keyB));
+        //两个各关注2万人的用户，其中一半重合
+        CompressedIdSet a = new CompressedIdSet();
+        CompressedIdSet b = new CompressedIdSet();
+        List<String> idsA = new ArrayList<>();
+        List<String> idsB = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            int idA = 1000000 + i * 3;
+            int idB = 1000000 + (i + 10000) * 3;
+            a.add(idA);
+            b.add(idB);
+            idsA.add(String.valueOf(idA));
+            idsB.add(String.valueOf(idB));
+        }
+        stringRedisTemplate.opsForSet().add(keyA, idsA.toArray(new String[0]));
+        stringRedisTemplate.opsForSet().add(keyB, idsB.toArray(new String[0]));
+        assertEquals(stringRedisTemplate.opsForSet().intersect(keyA, keyB).size(), a.and(b).cardinality());
+        Runnable sinter = () -> stringRedisTemplate.opsForSet().intersect(keyA, keyB);
+        Runnable bitmap = () -> a.and(b);
+        //预热
+        measureNanosPerOp(sinter, 100);
+        measureNanosPerOp(bitmap, 1000);
+        System.out.println("Redis SINTER     ns/op = " + measureNanosPerOp(sinter, 1000));
+        System.out.println("compressed bitmap ns/op = " + measureNanosPerOp(bitmap, 10000));
+        System.out.println("bitmap bytes = " + (a.sizeInBytes() + b.sizeInBytes()));
+        stringRedisTemplate.delete(List.of(keyA, keyB));
+    }
+
+    /**
+     * 对比每个请求的鉴权耗时(ns/op)：原HGETALL+EXPIRE、Redis会话（本地会话缓存）、无状态签名令牌
+     */
+    @Test
+    public void testAuthOverhead() {
+        UserDTO user = new UserDTO();
+        user.setId(1L);
+        user.setNickName("user_test");
+        user.setIcon("/imgs/icons/test.jpg");
+        String sessionToken = "auth-benchmark";
+        String key = RedisConstants.LOGIN_USER_KEY + sessionToken;
+        loginSessions.save(sessionToken, user);
+        //默认配置为session模式，无状态令牌未开启时verify一律拒绝，这里单独创建开启无状态模式的实例
+        StatelessTokens statelessTokens = new StatelessTokens(stringRedisTemplate, redisMessageListenerContainer,
+                "stateless", "auth-benchmark-secret", 100000, 0.001);
+        String statelessToken = statelessTokens.sign(user, System.currentTimeMillis() + 3600000);
+        assertEquals(user, statelessTokens.verify(statelessToken));
+        Runnable legacy = () -> {
+            Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(key);
+            BeanUtil.fillBeanWithMap(entries, new UserDTO(), false);
+            stringRedisTemplate.expire(key, RedisConstants.LOGIN_USER_TTL, TimeUnit.MINUTES);
+        };
+        Runnable session = () -> loginSessions.get(sessionToken);
+        Runnable stateless = () -> statelessTokens.verify(statelessToken);
+        //预热
+        measureNanosPerOp(legacy, 1000);
+        measureNanosPerOp(session, 100000);
+        measureNanosPerOp(stateless, 100000);
+        System.out.println("HGETALL+EXPIRE  ns/op = " + measureNanosPerOp(legacy, 10000));
+        System.out.println("session cache   ns/op = " + measureNanosPerOp(session, 1000000));
+        System.out.println("stateless token ns/op = " + measureNanosPerOp(stateless, 1000000));
+        loginSessions.remove(sessionToken);
+    }
+
+    /**
+     * 对比未命中本地会话缓存时查询并刷新会话的耗时(ns/op)：HGETALL+反射转换+EXPIRE 与一次Lua脚本调用
+     */
+    @Test
+    public void testSessionFetchAndTouch() {
+        UserDTO user = new UserDTO();
+        user.setId(1L);
+        user.setNickName("user_test");
+        user.setIcon("/imgs/icons/test.jpg");
+        String token = "touch-benchmark";
+        String key = RedisConstants.LOGIN_USER_KEY + token;
+        //不开启本地会话缓存、每次都刷新有效期，与原实现的语义一致
+        LoginSessions sessions = new LoginSessions(stringRedisTemplate, redisMessageListenerContainer, false, 0, 0, 0);
+        sessions.save(token, user);
+        assertEquals(user, sessions.get(token));
+        Runnable before = () -> {
+            Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(key);
+            BeanUtil.fillBeanWithMap(entries, new UserDTO(), false);
+            stringRedisTemplate.expire(key, RedisConstants.LOGIN_USER_TTL, TimeUnit.MINUTES);
+        };
+        Runnable after = () -> sessions.get(token);
+        //预热
+        measureNanosPerOp(before, 1000);
+        measureNanosPerOp(after, 1000);
+        System.out.println("HGETALL+EXPIRE ns/op = " + measureNanosPerOp(before, 10000));
+        System.out.println("Lua touch      ns/op = " + measureNanosPerOp(after, 10000));
+        sessions.remove(token);
+    }
+
+    private long measureNanosPerOp(Runnable op, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            op.run();
+        }
+        return (System.nanoTime() - start) / iterations;
+    }
 }